@@ -0,0 +1,498 @@
+/*
+ * AncestorIndex.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * An index holding, for every noun and verb synset, the offsets of all its
+ * ancestors in the hypernym hierarchy (including the synset itself) as a
+ * sorted array. This allows the common subsumers of two synsets to be found
+ * with a single merge of two sorted arrays rather than by comparing every
+ * pair of paths to the root of the hierarchy.
+ * <p>
+ * The index is built once from a dictionary, saved to a file and then memory
+ * mapped when it is loaded, so that multiple processes share the same
+ * physical pages. Instances are immutable and so can be shared between
+ * threads.
+ */
+public final class AncestorIndex
+{
+	/**
+	 * The first four bytes of an index file, "WNAI"
+	 */
+	private static final int MAGIC = 0x574E4149;
+
+	/**
+	 * The version of the file format written by this class
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The POS tags for which the index is built, as information content
+	 * is only defined for nouns and verbs
+	 */
+	private static final POS[] POS_TAGS = {POS.NOUN, POS.VERB};
+
+	/**
+	 * The version of WordNet the index was built from
+	 */
+	private final String version;
+
+	/**
+	 * The index for each POS tag, indexed by the ID of the POS tag
+	 */
+	private final Table[] tables;
+
+	private AncestorIndex(String version, Table[] tables)
+	{
+		this.version = version;
+		this.tables = tables;
+	}
+
+	/**
+	 * Get the version of WordNet the index was built from.
+	 * @return the WordNet version number, i.e. 2.1
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Is the given synset in the index.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return true if the ancestors of the synset are known, false otherwise
+	 */
+	public boolean contains(POS pos, long offset)
+	{
+		Table table = tables[pos.getId()];
+		return table != null && table.indexOf(offset) >= 0;
+	}
+
+	/**
+	 * Get the ancestors of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return the sorted offsets of the synset and all its hypernyms, or null
+	 *         if the synset is not in the index
+	 */
+	public int[] getAncestors(POS pos, long offset)
+	{
+		Table table = tables[pos.getId()];
+		if (table == null) return null;
+
+		int i = table.indexOf(offset);
+		if (i < 0) return null;
+
+		int start = table.starts.get(i);
+		int[] ancestors = new int[table.starts.get(i + 1) - start];
+		for (int j = 0; j < ancestors.length; ++j)
+		{
+			ancestors[j] = table.ancestors.get(start + j);
+		}
+
+		return ancestors;
+	}
+
+	/**
+	 * Finds the lowest common subsumer of two synsets. The candidates are the
+	 * common subsumers which are not a hypernym of another common subsumer,
+	 * and the one with the highest information content is returned. These
+	 * are the subsumers found by comparing each pair of paths to the root of
+	 * the hierarchy, so the result doesn't rely on IC never increasing as we
+	 * move up the hierarchy. When several candidates share the highest value
+	 * the one with the lowest offset is returned.
+	 * @param pos the POS tag of the two synsets
+	 * @param offset1 the offset of the first synset
+	 * @param offset2 the offset of the second synset
+	 * @param ic the information content to score the subsumers by
+	 * @return the offset of the lowest common subsumer, or -1 if the synsets
+	 *         don't share an ancestor or either synset is not in the index
+	 */
+	public long getLCS(POS pos, long offset1, long offset2, InformationContent ic)
+	{
+		Table table = tables[pos.getId()];
+		if (table == null) return -1;
+
+		int i1 = table.indexOf(offset1);
+		int i2 = table.indexOf(offset2);
+		if (i1 < 0 || i2 < 0) return -1;
+
+		int a = table.starts.get(i1);
+		int aEnd = table.starts.get(i1 + 1);
+		int b = table.starts.get(i2);
+		int bEnd = table.starts.get(i2 + 1);
+
+		//the sorted offsets of the common subsumers
+		int[] common = new int[Math.min(aEnd - a, bEnd - b)];
+		int n = 0;
+
+		while (a < aEnd && b < bEnd)
+		{
+			int x = table.ancestors.get(a);
+			int y = table.ancestors.get(b);
+
+			if (x < y)
+			{
+				++a;
+			}
+			else if (x > y)
+			{
+				++b;
+			}
+			else
+			{
+				common[n++] = x;
+
+				++a;
+				++b;
+			}
+		}
+
+		//rule out every common subsumer which is a hypernym of another
+		boolean[] above = new boolean[n];
+
+		for (int i = 0; i < n; ++i)
+		{
+			int c = table.indexOf(common[i]);
+			if (c < 0) continue;
+
+			int j = 0;
+			for (int k = table.starts.get(c); k < table.starts.get(c + 1) && j < n; ++k)
+			{
+				int ancestor = table.ancestors.get(k);
+
+				while (j < n && common[j] < ancestor) ++j;
+
+				if (j < n && common[j] == ancestor && j != i) above[j] = true;
+			}
+		}
+
+		long lcs = -1;
+		double score = 0;
+
+		for (int i = 0; i < n; ++i)
+		{
+			if (above[i]) continue;
+
+			double value = ic.getIC(pos, common[i]);
+			if (lcs == -1 || value > score)
+			{
+				lcs = common[i];
+				score = value;
+			}
+		}
+
+		return lcs;
+	}
+
+	/**
+	 * Loads an index from a file previously written by
+	 * {@link #write(OutputStream)}. Local files are memory mapped.
+	 * @param url the location of the index
+	 * @return the loaded index
+	 * @throws IOException if the index can't be read
+	 */
+	public static AncestorIndex load(URL url) throws IOException
+	{
+		ByteBuffer buffer = MappedFiles.map(url);
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) throw new IOException("Malformed ancestor index file");
+		if (buffer.getInt() != FORMAT_VERSION) throw new IOException("Unsupported ancestor index file format version");
+
+		byte[] version = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(version);
+
+		int count = buffer.getInt();
+		int[] posIDs = new int[count];
+		int[] sizes = new int[count];
+		int[] totals = new int[count];
+
+		for (int i = 0; i < count; ++i)
+		{
+			posIDs[i] = buffer.getInt();
+			sizes[i] = buffer.getInt();
+			totals[i] = buffer.getInt();
+
+			if (POS.getPOSForId(posIDs[i]) == null) throw new IOException("Invalid POS Tag in ancestor index file: " + posIDs[i]);
+		}
+
+		Table[] tables = new Table[POS.values().length + 1];
+		int position = MappedFiles.align(buffer.position());
+
+		for (int i = 0; i < count; ++i)
+		{
+			IntBuffer synsets = slice(buffer, position, sizes[i]);
+			position += MappedFiles.align(sizes[i] * 4);
+
+			IntBuffer starts = slice(buffer, position, sizes[i] + 1);
+			position += MappedFiles.align((sizes[i] + 1) * 4);
+
+			IntBuffer ancestors = slice(buffer, position, totals[i]);
+			position += MappedFiles.align(totals[i] * 4);
+
+			tables[posIDs[i]] = new Table(synsets, starts, ancestors);
+		}
+
+		return new AncestorIndex(new String(version, "UTF-8"), tables);
+	}
+
+	private static IntBuffer slice(ByteBuffer buffer, int position, int length)
+	{
+		buffer.position(position);
+		IntBuffer slice = buffer.slice().asIntBuffer();
+		slice.limit(length);
+		return slice;
+	}
+
+	/**
+	 * Writes the index so that it can later be loaded with {@link #load(URL)}.
+	 * The layout is a header of the magic number and format version, the
+	 * WordNet version, the number of tables and, for each table, its POS ID,
+	 * number of synsets and total number of ancestors. This is followed by
+	 * the sorted synset offsets, the start of each synset's ancestors and
+	 * the ancestors themselves for each table in turn, each array being
+	 * padded to a multiple of eight bytes.
+	 * @param out the stream to write to, which is not closed
+	 * @throws IOException if an error occurs writing to the stream
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+		int count = 0;
+		for (Table table : tables)
+		{
+			if (table != null) ++count;
+		}
+
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeUTF(version);
+		data.writeInt(count);
+
+		for (int id = 0; id < tables.length; ++id)
+		{
+			if (tables[id] == null) continue;
+
+			data.writeInt(id);
+			data.writeInt(tables[id].synsets.limit());
+			data.writeInt(tables[id].ancestors.limit());
+		}
+
+		MappedFiles.pad(data);
+
+		for (Table table : tables)
+		{
+			if (table == null) continue;
+
+			write(data, table.synsets);
+			write(data, table.starts);
+			write(data, table.ancestors);
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Writes the index so that it can later be loaded with {@link #load(URL)}.
+	 * @param file the file to write to
+	 * @throws IOException if an error occurs writing to the file
+	 */
+	public void write(File file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static void write(DataOutputStream data, IntBuffer values) throws IOException
+	{
+		for (int i = 0; i < values.limit(); ++i)
+		{
+			data.writeInt(values.get(i));
+		}
+
+		MappedFiles.pad(data);
+	}
+
+	/**
+	 * Builds the index for all the noun and verb synsets in a dictionary.
+	 * Only hypernym pointers are followed, exactly as when the hypernym
+	 * tree of a synset is retrieved from the dictionary.
+	 * @param dict the dictionary to index
+	 * @return the index
+	 * @throws JWNLException if an error occurs accessing WordNet
+	 */
+	public static AncestorIndex build(Dictionary dict) throws JWNLException
+	{
+		return build(HypernymGraph.build(dict));
+	}
+
+	/**
+	 * Builds the index for all the synsets in a hypernym graph.
+	 * @param graph the hypernym hierarchies to index
+	 * @return the index
+	 */
+	public static AncestorIndex build(HypernymGraph graph)
+	{
+		Table[] tables = new Table[POS.values().length + 1];
+
+		for (POS pos : POS_TAGS)
+		{
+			int size = graph.size(pos);
+			if (size == 0) continue;
+
+			//compute the closure of each synset from those of its
+			//hypernyms, remembering them as we go
+			int[][] closures = new int[size][];
+			boolean[] visiting = new boolean[size];
+
+			int[] starts = new int[size + 1];
+			for (int i = 0; i < size; ++i)
+			{
+				starts[i + 1] = starts[i] + closure(i, pos, graph, closures, visiting).length;
+			}
+
+			int[] offsets = new int[size];
+			int[] ancestors = new int[starts[size]];
+			for (int i = 0; i < size; ++i)
+			{
+				offsets[i] = (int)graph.getOffset(pos, i);
+
+				//ordinals are in offset order so the closure stays sorted
+				for (int j = 0; j < closures[i].length; ++j)
+				{
+					ancestors[starts[i] + j] = (int)graph.getOffset(pos, closures[i][j]);
+				}
+			}
+
+			tables[pos.getId()] = new Table(IntBuffer.wrap(offsets), IntBuffer.wrap(starts), IntBuffer.wrap(ancestors));
+		}
+
+		return new AncestorIndex(graph.getVersion(), tables);
+	}
+
+	/**
+	 * Computes the sorted ordinals of a synset and all its ancestors.
+	 */
+	private static int[] closure(int synset, POS pos, HypernymGraph graph, int[][] closures, boolean[] visiting)
+	{
+		if (closures[synset] != null) return closures[synset];
+
+		int[] closure = {synset};
+
+		//guard against any cycles in the hierarchy
+		visiting[synset] = true;
+
+		for (int i = 0; i < graph.getHypernymCount(pos, synset); ++i)
+		{
+			int hypernym = graph.getHypernym(pos, synset, i);
+			if (visiting[hypernym]) continue;
+
+			closure = union(closure, closure(hypernym, pos, graph, closures, visiting));
+		}
+
+		visiting[synset] = false;
+		closures[synset] = closure;
+
+		return closure;
+	}
+
+	/**
+	 * Merges two sorted arrays, dropping duplicates.
+	 */
+	private static int[] union(int[] a, int[] b)
+	{
+		int[] result = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+
+		while (i < a.length || j < b.length)
+		{
+			int next;
+			if (j == b.length || (i < a.length && a[i] < b[j]))
+				next = a[i++];
+			else if (i == a.length || b[j] < a[i])
+				next = b[j++];
+			else
+			{
+				next = a[i++];
+				++j;
+			}
+
+			result[n++] = next;
+		}
+
+		return (n == result.length ? result : Arrays.copyOf(result, n));
+	}
+
+	/**
+	 * The index for a single POS tag in compressed sparse row form: the
+	 * ancestors of the synset at position i in the sorted synset offsets are
+	 * those between starts[i] (inclusive) and starts[i + 1] (exclusive).
+	 */
+	private static final class Table
+	{
+		final IntBuffer synsets;
+		final IntBuffer starts;
+		final IntBuffer ancestors;
+
+		Table(IntBuffer synsets, IntBuffer starts, IntBuffer ancestors)
+		{
+			this.synsets = synsets;
+			this.starts = starts;
+			this.ancestors = ancestors;
+		}
+
+		int indexOf(long offset)
+		{
+			if (offset < 0 || offset > Integer.MAX_VALUE) return -1;
+
+			int low = 0;
+			int high = synsets.limit() - 1;
+
+			while (low <= high)
+			{
+				int mid = (low + high) >>> 1;
+				int value = synsets.get(mid);
+
+				if (value < offset)
+					low = mid + 1;
+				else if (value > offset)
+					high = mid - 1;
+				else
+					return mid;
+			}
+
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,655 @@
+/*
+ * HypernymGraph.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.data.Pointer;
+import net.sf.extjwnl.data.PointerType;
+import net.sf.extjwnl.data.Synset;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * A snapshot of the noun and verb hypernym hierarchies held as primitive
+ * arrays, so that they can be traversed without going back to the
+ * dictionary or creating any objects.
+ * <p>
+ * Each synset is given a dense ordinal, its position in the sorted list of
+ * synset offsets for its POS tag. The hypernyms and hyponyms of each synset
+ * are then held in compressed sparse row form: the hypernyms of the synset
+ * with ordinal i are the ordinals between hypernymStarts[i] (inclusive) and
+ * hypernymStarts[i + 1] (exclusive) of the hypernyms array, in the order the
+ * pointers appear in WordNet, and likewise for the hyponyms. Only hypernym
+ * and hyponym pointers are included, exactly as followed by the hypernym and
+ * hyponym trees retrieved from the dictionary.
+ * <p>
+ * The graph is built once from a dictionary, saved to a file and then memory
+ * mapped when it is loaded. Instances are immutable and so can be shared
+ * between threads.
+ */
+public final class HypernymGraph
+{
+	/**
+	 * The first four bytes of a graph file, "WNHG"
+	 */
+	private static final int MAGIC = 0x574E4847;
+
+	/**
+	 * The version of the file format written by this class
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The POS tags which have a hypernym hierarchy
+	 */
+	private static final POS[] POS_TAGS = {POS.NOUN, POS.VERB};
+
+	/**
+	 * The version of WordNet the graph was built from
+	 */
+	private final String version;
+
+	/**
+	 * The graph for each POS tag, indexed by the ID of the POS tag
+	 */
+	private final Table[] tables;
+
+	/**
+	 * Working space for traversing the graph, one per thread
+	 */
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>();
+
+	private HypernymGraph(String version, Table[] tables)
+	{
+		this.version = version;
+		this.tables = tables;
+	}
+
+	/**
+	 * Get the version of WordNet the graph was built from.
+	 * @return the WordNet version number, i.e. 2.1
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Get the number of synsets in the graph for a POS tag.
+	 * @param pos the POS tag
+	 * @return the number of synsets, which is one more than the highest
+	 *         ordinal, or 0 if the POS tag has no hierarchy
+	 */
+	public int size(POS pos)
+	{
+		Table table = tables[pos.getId()];
+		return (table == null ? 0 : table.offsets.limit());
+	}
+
+	/**
+	 * Get the ordinal of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return the ordinal of the synset or -1 if it isn't in the graph
+	 */
+	public int getOrdinal(POS pos, long offset)
+	{
+		Table table = tables[pos.getId()];
+		if (table == null || offset < 0 || offset > Integer.MAX_VALUE) return -1;
+
+		IntBuffer offsets = table.offsets;
+		int low = 0;
+		int high = offsets.limit() - 1;
+
+		while (low <= high)
+		{
+			int mid = (low + high) >>> 1;
+			int value = offsets.get(mid);
+
+			if (value < offset)
+				low = mid + 1;
+			else if (value > offset)
+				high = mid - 1;
+			else
+				return mid;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Get the offset of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @return the offset of the synset
+	 */
+	public long getOffset(POS pos, int ordinal)
+	{
+		return tables[pos.getId()].offsets.get(ordinal);
+	}
+
+	/**
+	 * Get the number of direct hypernyms of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @return the number of direct hypernyms, 0 for the root of a hierarchy
+	 */
+	public int getHypernymCount(POS pos, int ordinal)
+	{
+		IntBuffer starts = tables[pos.getId()].hypernymStarts;
+		return starts.get(ordinal + 1) - starts.get(ordinal);
+	}
+
+	/**
+	 * Get one of the direct hypernyms of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @param i the index of the hypernym, from 0 to one less than
+	 *        {@link #getHypernymCount(POS, int)}
+	 * @return the ordinal of the hypernym
+	 */
+	public int getHypernym(POS pos, int ordinal, int i)
+	{
+		Table table = tables[pos.getId()];
+		return table.hypernyms.get(table.hypernymStarts.get(ordinal) + i);
+	}
+
+	/**
+	 * Get the number of direct hyponyms of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @return the number of direct hyponyms, 0 for a leaf of a hierarchy
+	 */
+	public int getHyponymCount(POS pos, int ordinal)
+	{
+		IntBuffer starts = tables[pos.getId()].hyponymStarts;
+		return starts.get(ordinal + 1) - starts.get(ordinal);
+	}
+
+	/**
+	 * Get one of the direct hyponyms of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @param i the index of the hyponym, from 0 to one less than
+	 *        {@link #getHyponymCount(POS, int)}
+	 * @return the ordinal of the hyponym
+	 */
+	public int getHyponym(POS pos, int ordinal, int i)
+	{
+		Table table = tables[pos.getId()];
+		return table.hyponyms.get(table.hyponymStarts.get(ordinal) + i);
+	}
+
+	/**
+	 * Looks up the Information Content (IC) value of every synset in the
+	 * graph, so that they can then be accessed by ordinal.
+	 * @param pos the POS tag of the hierarchy
+	 * @param ic the information content to look the values up in
+	 * @return the IC values indexed by ordinal
+	 */
+	public double[] getInfoContent(POS pos, InformationContent ic)
+	{
+		double[] values = new double[size(pos)];
+		for (int i = 0; i < values.length; ++i)
+		{
+			values[i] = ic.getIC(pos, getOffset(pos, i));
+		}
+		return values;
+	}
+
+	/**
+	 * Finds the lowest common subsumer of two synsets. The candidates are the
+	 * common subsumers which are not a hypernym of another common subsumer,
+	 * and the one with the highest information content is returned, exactly
+	 * as {@link AncestorIndex#getLCS(POS, long, long, InformationContent)}
+	 * does. When several candidates share the highest value the one with the
+	 * lowest ordinal (and hence offset) is returned.
+	 * @param pos the POS tag of the two synsets
+	 * @param ordinal1 the ordinal of the first synset
+	 * @param ordinal2 the ordinal of the second synset
+	 * @param ic the IC values of the synsets indexed by ordinal, as returned
+	 *        by {@link #getInfoContent(POS, InformationContent)}
+	 * @return the ordinal of the lowest common subsumer, or -1 if the synsets
+	 *         don't share an ancestor
+	 */
+	public int getLCS(POS pos, int ordinal1, int ordinal2, double[] ic)
+	{
+		Table table = tables[pos.getId()];
+		Scratch s = getScratch();
+
+		//each search uses three new stamps, so we don't have to clear the
+		//marks: one for the ancestors of the first synset, one for the
+		//ancestors of the second synset we have already seen and one for
+		//the hypernyms of the common subsumers
+		if (s.stamp > Integer.MAX_VALUE - 3)
+		{
+			Arrays.fill(s.marks, 0);
+			s.stamp = 0;
+		}
+		int first = ++s.stamp;
+		int second = ++s.stamp;
+		int above = ++s.stamp;
+
+		int top = 0;
+		s.stack[top++] = ordinal1;
+		s.marks[ordinal1] = first;
+
+		while (top > 0)
+		{
+			int node = s.stack[--top];
+
+			for (int i = table.hypernymStarts.get(node); i < table.hypernymStarts.get(node + 1); ++i)
+			{
+				int hypernym = table.hypernyms.get(i);
+				if (s.marks[hypernym] != first)
+				{
+					s.marks[hypernym] = first;
+					s.stack[top++] = hypernym;
+				}
+			}
+		}
+
+		//collect the common subsumers
+		int found = 0;
+
+		s.stack[top++] = ordinal2;
+
+		while (top > 0)
+		{
+			int node = s.stack[--top];
+
+			if (s.marks[node] == second) continue;
+
+			if (s.marks[node] == first) s.found[found++] = node;
+
+			s.marks[node] = second;
+
+			for (int i = table.hypernymStarts.get(node); i < table.hypernymStarts.get(node + 1); ++i)
+			{
+				int hypernym = table.hypernyms.get(i);
+				if (s.marks[hypernym] != second) s.stack[top++] = hypernym;
+			}
+		}
+
+		//mark every hypernym of a common subsumer, as none of them can be
+		//the lowest common subsumer
+		for (int c = 0; c < found; ++c)
+		{
+			s.stack[top++] = s.found[c];
+
+			while (top > 0)
+			{
+				int node = s.stack[--top];
+
+				for (int i = table.hypernymStarts.get(node); i < table.hypernymStarts.get(node + 1); ++i)
+				{
+					int hypernym = table.hypernyms.get(i);
+					if (s.marks[hypernym] != above)
+					{
+						s.marks[hypernym] = above;
+						s.stack[top++] = hypernym;
+					}
+				}
+			}
+		}
+
+		int lcs = -1;
+
+		for (int c = 0; c < found; ++c)
+		{
+			int node = s.found[c];
+
+			if (s.marks[node] != above && (lcs == -1 || ic[node] > ic[lcs] || (ic[node] == ic[lcs] && node < lcs)))
+			{
+				lcs = node;
+			}
+		}
+
+		return lcs;
+	}
+
+	/**
+	 * Get the ancestors of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param ordinal the ordinal of the synset
+	 * @return the sorted ordinals of the synset and all its hypernyms
+	 */
+	public int[] getAncestors(POS pos, int ordinal)
+	{
+		Table table = tables[pos.getId()];
+		Scratch s = getScratch();
+
+		if (s.stamp == Integer.MAX_VALUE)
+		{
+			Arrays.fill(s.marks, 0);
+			s.stamp = 0;
+		}
+		int stamp = ++s.stamp;
+
+		//every node is pushed exactly once, so the stack ends up holding
+		//all the ancestors we have visited
+		int top = 0;
+		s.stack[top++] = ordinal;
+		s.marks[ordinal] = stamp;
+
+		for (int next = 0; next < top; ++next)
+		{
+			int node = s.stack[next];
+
+			for (int i = table.hypernymStarts.get(node); i < table.hypernymStarts.get(node + 1); ++i)
+			{
+				int hypernym = table.hypernyms.get(i);
+				if (s.marks[hypernym] != stamp)
+				{
+					s.marks[hypernym] = stamp;
+					s.stack[top++] = hypernym;
+				}
+			}
+		}
+
+		int[] ancestors = Arrays.copyOf(s.stack, top);
+		Arrays.sort(ancestors);
+		return ancestors;
+	}
+
+	private Scratch getScratch()
+	{
+		Scratch s = scratch.get();
+
+		if (s == null)
+		{
+			int size = 0;
+			int edges = 0;
+			for (Table table : tables)
+			{
+				if (table == null) continue;
+
+				size = Math.max(size, table.offsets.limit());
+				edges = Math.max(edges, table.hypernyms.limit());
+			}
+
+			//a node can only be pushed once per incoming edge, plus the start
+			s = new Scratch(size, edges + 1);
+			scratch.set(s);
+		}
+
+		return s;
+	}
+
+	/**
+	 * Working space for a traversal of the graph.
+	 */
+	private static final class Scratch
+	{
+		final int[] marks;
+		final int[] stack;
+		final int[] found;
+		int stamp = 0;
+
+		Scratch(int size, int depth)
+		{
+			marks = new int[size];
+			stack = new int[depth];
+			found = new int[size];
+		}
+	}
+
+	/**
+	 * Loads a graph from a file previously written by
+	 * {@link #write(OutputStream)}. Local files are memory mapped.
+	 * @param url the location of the graph
+	 * @return the loaded graph
+	 * @throws IOException if the graph can't be read
+	 */
+	public static HypernymGraph load(URL url) throws IOException
+	{
+		ByteBuffer buffer = MappedFiles.map(url);
+
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) throw new IOException("Malformed hypernym graph file");
+		if (buffer.getInt() != FORMAT_VERSION) throw new IOException("Unsupported hypernym graph file format version");
+
+		byte[] version = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(version);
+
+		int count = buffer.getInt();
+		int[][] header = new int[count][];
+
+		for (int i = 0; i < count; ++i)
+		{
+			//the POS ID, the number of synsets, hypernyms and hyponyms
+			header[i] = new int[] {buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()};
+
+			if (POS.getPOSForId(header[i][0]) == null) throw new IOException("Invalid POS Tag in hypernym graph file: " + header[i][0]);
+		}
+
+		Table[] tables = new Table[POS.values().length + 1];
+		int position = MappedFiles.align(buffer.position());
+
+		for (int[] h : header)
+		{
+			IntBuffer[] arrays = new IntBuffer[5];
+			int[] lengths = {h[1], h[1] + 1, h[2], h[1] + 1, h[3]};
+
+			for (int i = 0; i < arrays.length; ++i)
+			{
+				buffer.position(position);
+				arrays[i] = buffer.slice().asIntBuffer();
+				arrays[i].limit(lengths[i]);
+				position += MappedFiles.align(lengths[i] * 4);
+			}
+
+			tables[h[0]] = new Table(arrays[0], arrays[1], arrays[2], arrays[3], arrays[4]);
+		}
+
+		return new HypernymGraph(new String(version, "UTF-8"), tables);
+	}
+
+	/**
+	 * Writes the graph so that it can later be loaded with {@link #load(URL)}.
+	 * The layout is a header of the magic number and format version, the
+	 * WordNet version, the number of tables and, for each table, its POS ID
+	 * and the number of synsets, hypernym pointers and hyponym pointers. This
+	 * is followed by the offsets, hypernym starts, hypernyms, hyponym starts
+	 * and hyponyms of each table in turn, each array being padded to a
+	 * multiple of eight bytes.
+	 * @param out the stream to write to, which is not closed
+	 * @throws IOException if an error occurs writing to the stream
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+		int count = 0;
+		for (Table table : tables)
+		{
+			if (table != null) ++count;
+		}
+
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeUTF(version);
+		data.writeInt(count);
+
+		for (int id = 0; id < tables.length; ++id)
+		{
+			if (tables[id] == null) continue;
+
+			data.writeInt(id);
+			data.writeInt(tables[id].offsets.limit());
+			data.writeInt(tables[id].hypernyms.limit());
+			data.writeInt(tables[id].hyponyms.limit());
+		}
+
+		MappedFiles.pad(data);
+
+		for (Table table : tables)
+		{
+			if (table == null) continue;
+
+			for (IntBuffer values : new IntBuffer[] {table.offsets, table.hypernymStarts, table.hypernyms, table.hyponymStarts, table.hyponyms})
+			{
+				for (int i = 0; i < values.limit(); ++i)
+				{
+					data.writeInt(values.get(i));
+				}
+
+				MappedFiles.pad(data);
+			}
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Writes the graph so that it can later be loaded with {@link #load(URL)}.
+	 * @param file the file to write to
+	 * @throws IOException if an error occurs writing to the file
+	 */
+	public void write(File file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * Builds the graph of all the noun and verb synsets in a dictionary.
+	 * This reads every synset once, in file order.
+	 * @param dict the dictionary to take a snapshot of
+	 * @return the graph
+	 * @throws JWNLException if an error occurs accessing WordNet
+	 */
+	public static HypernymGraph build(Dictionary dict) throws JWNLException
+	{
+		Table[] tables = new Table[POS.values().length + 1];
+
+		for (POS pos : POS_TAGS)
+		{
+			List<Synset> synsets = new ArrayList<Synset>();
+			Iterator<Synset> it = dict.getSynsetIterator(pos);
+			while (it.hasNext())
+			{
+				synsets.add(it.next());
+			}
+
+			int[] offsets = new int[synsets.size()];
+			for (int i = 0; i < offsets.length; ++i)
+			{
+				offsets[i] = (int)synsets.get(i).getOffset();
+			}
+			Arrays.sort(offsets);
+
+			//the synsets in ordinal order
+			Synset[] ordered = new Synset[offsets.length];
+			for (Synset synset : synsets)
+			{
+				ordered[Arrays.binarySearch(offsets, (int)synset.getOffset())] = synset;
+			}
+
+			int[][] hypernyms = targets(ordered, offsets, PointerType.HYPERNYM);
+			int[][] hyponyms = targets(ordered, offsets, PointerType.HYPONYM);
+
+			tables[pos.getId()] = new Table(IntBuffer.wrap(offsets),
+					IntBuffer.wrap(starts(hypernyms)), IntBuffer.wrap(flatten(hypernyms)),
+					IntBuffer.wrap(starts(hyponyms)), IntBuffer.wrap(flatten(hyponyms)));
+		}
+
+		return new HypernymGraph(String.valueOf(dict.getVersion().getNumber()), tables);
+	}
+
+	/**
+	 * Get the ordinals of the targets of one type of pointer for each synset.
+	 */
+	private static int[][] targets(Synset[] synsets, int[] offsets, PointerType type) throws JWNLException
+	{
+		int[][] targets = new int[synsets.length][];
+
+		for (int i = 0; i < synsets.length; ++i)
+		{
+			List<Pointer> pointers = synsets[i].getPointers(type);
+			int[] ordinals = new int[pointers.size()];
+			int n = 0;
+
+			for (Pointer pointer : pointers)
+			{
+				//ignore any pointers to synsets we don't know about
+				int ordinal = Arrays.binarySearch(offsets, (int)pointer.getTargetOffset());
+				if (ordinal >= 0 && synsets[i].getPOS().equals(pointer.getTargetPOS())) ordinals[n++] = ordinal;
+			}
+
+			targets[i] = (n == ordinals.length ? ordinals : Arrays.copyOf(ordinals, n));
+		}
+
+		return targets;
+	}
+
+	private static int[] starts(int[][] rows)
+	{
+		int[] starts = new int[rows.length + 1];
+		for (int i = 0; i < rows.length; ++i)
+		{
+			starts[i + 1] = starts[i] + rows[i].length;
+		}
+		return starts;
+	}
+
+	private static int[] flatten(int[][] rows)
+	{
+		int[] values = new int[starts(rows)[rows.length]];
+		int n = 0;
+		for (int[] row : rows)
+		{
+			System.arraycopy(row, 0, values, n, row.length);
+			n += row.length;
+		}
+		return values;
+	}
+
+	/**
+	 * The graph for a single POS tag.
+	 */
+	private static final class Table
+	{
+		final IntBuffer offsets;
+		final IntBuffer hypernymStarts;
+		final IntBuffer hypernyms;
+		final IntBuffer hyponymStarts;
+		final IntBuffer hyponyms;
+
+		Table(IntBuffer offsets, IntBuffer hypernymStarts, IntBuffer hypernyms, IntBuffer hyponymStarts, IntBuffer hyponyms)
+		{
+			this.offsets = offsets;
+			this.hypernymStarts = hypernymStarts;
+			this.hypernyms = hypernyms;
+			this.hyponymStarts = hyponymStarts;
+			this.hyponyms = hyponyms;
+		}
+	}
+}
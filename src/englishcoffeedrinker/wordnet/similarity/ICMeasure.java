@@ -12,15 +12,15 @@
 
 package englishcoffeedrinker.wordnet.similarity;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import net.sf.extjwnl.JWNLException;
 import net.sf.extjwnl.data.POS;
@@ -42,16 +42,40 @@ import org.omg.SendingContext.RunTime;
 public abstract class ICMeasure extends PathMeasure
 {
 	/**
-	 * This map stores the synset IDs and there associated frequencies
-	 * as read from the supplied information content file.
+	 * The synset frequencies and IC values as read from the supplied
+	 * information content file.
 	 */
-	private Map<String, Double> freq = new HashMap<String, Double>();
+	private InformationContent infoContent = InformationContent.EMPTY;
+
+	/**
+	 * The precomputed ancestors of each synset, or null if the lowest
+	 * common subsumer should be found by walking the hypernym trees
+	 */
+	private AncestorIndex ancestorIndex = null;
+
+	/**
+	 * A snapshot of the hypernym hierarchies, or null if the lowest common
+	 * subsumer should be found by walking the hypernym trees
+	 */
+	private HypernymGraph hypernymGraph = null;
+
+	/**
+	 * The IC value of each synset in the hypernym graph, indexed first by
+	 * POS tag ID and then by ordinal
+	 */
+	private double[][] graphIC = null;
 
 	protected void config(Map<String, String> params) throws IOException {
 		super.config(Boolean.parseBoolean(params.remove("root")));
 
 		loadInfoContent(params.remove("infocontent"),
 				params.get("encoding"));
+
+		String ancestors = params.remove("ancestors");
+		if (ancestors != null) loadAncestorIndex(ancestors);
+
+		String hypernyms = params.remove("hypernyms");
+		if (hypernyms != null) loadHypernymGraph(hypernyms);
 	}
 
 	/**
@@ -61,84 +85,488 @@ public abstract class ICMeasure extends PathMeasure
 	 * @throws IOException IF the file couldn't be loaded or the file version doesn't math wordnet version
 	 */
 	public void loadInfoContent(String infoContent, String encoding) throws IOException {
-		//a handle to the infocontent file
-		BufferedReader in = null;
+		InformationContent ic = InformationContent.load(new URL(infoContent), encoding);
+
+		//Check that the IC file is meant for use with the version
+		//of WordNet we are currently using
+		if (!ic.getVersion().equals(String.valueOf(dict.getVersion().getNumber()))) throw new IOException("InfoContent file version doesn't match WordNet version");
+
+		this.infoContent = ic;
+
+		//the IC values of the graph depend on the IC file so must be updated
+		if (hypernymGraph != null) graphIC = getGraphIC(hypernymGraph, ic);
+	}
+
+	/**
+	 * Loads an index of the ancestors of every synset, built by
+	 * {@link AncestorIndex#build(net.sf.extjwnl.dictionary.Dictionary)},
+	 * which is then used to find lowest common subsumers.
+	 * @param ancestors The location of the index file.
+	 * @throws IOException If the file couldn't be loaded or the index doesn't match the wordnet version
+	 */
+	public void loadAncestorIndex(String ancestors) throws IOException {
+		AncestorIndex index = AncestorIndex.load(new URL(ancestors));
+
+		if (!index.getVersion().equals(String.valueOf(dict.getVersion().getNumber()))) throw new IOException("Ancestor index version doesn't match WordNet version");
+
+		this.ancestorIndex = index;
+	}
+
+	/**
+	 * Loads a snapshot of the hypernym hierarchies, built by
+	 * {@link HypernymGraph#build(net.sf.extjwnl.dictionary.Dictionary)},
+	 * which is then used to find lowest common subsumers without accessing
+	 * the dictionary. An ancestor index, if one is loaded, takes precedence.
+	 * @param hypernyms The location of the graph file.
+	 * @throws IOException If the file couldn't be loaded or the graph doesn't match the wordnet version
+	 */
+	public void loadHypernymGraph(String hypernyms) throws IOException {
+		HypernymGraph graph = HypernymGraph.load(new URL(hypernyms));
+
+		if (!graph.getVersion().equals(String.valueOf(dict.getVersion().getNumber()))) throw new IOException("Hypernym graph version doesn't match WordNet version");
+
+		this.graphIC = getGraphIC(graph, infoContent);
+		this.hypernymGraph = graph;
+	}
+
+	private static double[][] getGraphIC(HypernymGraph graph, InformationContent ic)
+	{
+		double[][] values = new double[POS.values().length + 1][];
+		values[POS.NOUN.getId()] = graph.getInfoContent(POS.NOUN, ic);
+		values[POS.VERB.getId()] = graph.getInfoContent(POS.VERB, ic);
+		return values;
+	}
+
+	@Override
+	public double getSimilarity(Synset s1, Synset s2) throws JWNLException
+	{
+		//if the POS tags are not the same then return 0 as these measures
+		//only work with 2 nouns or 2 verbs.
+		if (!s1.getPOS().equals(s2.getPOS())) return 0;
+
+		//see if the similarity is already cached and...
+		double cached = getFromCache(s1, s2);
+
+		//if it is then simply return it
+		if (!Double.isNaN(cached)) return cached;
+
+		//Get the Information Content (IC) values for the two supplied synsets
+		double ic1 = getIC(s1);
+		double ic2 = getIC(s2);
+
+		//if either IC value is zero then cache and return a sim of 0
+		if (ic1 == 0 || ic2 == 0) return addToCache(s1, s2, 0);
+
+		//Get the IC value of the Lowest Common Subsumer (LCS) of the two synsets
+		double icLCS = getLCSInfoContent(s1, s2);
+
+		//if there isn't an LCS then cache and return a sim of 0
+		if (Double.isNaN(icLCS)) return addToCache(s1, s2, 0);
+
+		//calculate, cache and return the similarity
+		return addToCache(s1, s2, getSimilarity(s1.getPOS(), ic1, ic2, icLCS));
+	}
+
+	/**
+	 * Computes the similarity between two synsets from their Information
+	 * Content (IC) values and that of their lowest common subsumer. This is
+	 * only called when both IC values are non-zero and the synsets have a
+	 * common subsumer.
+	 * <p>
+	 * Subclasses which instead override {@link #getSimilarity(Synset, Synset)}
+	 * don't need to implement this, and sets of synsets are then compared
+	 * one pair at a time using their method.
+	 * @param pos the POS tag of the two synsets
+	 * @param ic1 the IC of the first synset
+	 * @param ic2 the IC of the second synset
+	 * @param icLCS the IC of the lowest common subsumer of the two synsets
+	 * @return the similarity between the two synsets
+	 * @throws UnsupportedOperationException unless overridden by a subclass
+	 */
+	protected double getSimilarity(POS pos, double ic1, double ic2, double icLCS)
+	{
+		throw new UnsupportedOperationException(getClass().getName() + " doesn't compute similarity from IC values");
+	}
 
+	/**
+	 * Does this measure compute similarity using
+	 * {@link #getSimilarity(POS, double, double, double)}, or is null if we
+	 * haven't checked yet
+	 */
+	private Boolean usesICValues = null;
+
+	/**
+	 * Checks whether the closest subclass to override one of the two
+	 * getSimilarity methods overrides the one taking IC values, in which
+	 * case that is how the similarity of two synsets is computed.
+	 * @return true if similarities can be computed from IC values
+	 */
+	private boolean usesICValues()
+	{
+		if (usesICValues == null)
+		{
+			boolean found = false;
+
+			for (Class<?> c = getClass(); c != ICMeasure.class; c = c.getSuperclass())
+			{
+				if (declares(c, Synset.class, Synset.class)) break;
+
+				if (declares(c, POS.class, double.class, double.class, double.class))
+				{
+					found = true;
+					break;
+				}
+			}
+
+			usesICValues = found;
+		}
+
+		return usesICValues;
+	}
+
+	private static boolean declares(Class<?> c, Class<?>... parameters)
+	{
 		try
 		{
-			URL url = new URL(infoContent);
+			c.getDeclaredMethod("getSimilarity", parameters);
+			return true;
+		}
+		catch (NoSuchMethodException e)
+		{
+			return false;
+		}
+	}
 
-			if (encoding == null) encoding = "UTF-8";
+	@Override
+	protected boolean isSymmetric()
+	{
+		return true;
+	}
 
-			//open the info content file for reading
-			in = new BufferedReader(new InputStreamReader(url.openStream(), encoding));
+	@Override
+	protected boolean comparesAcrossPOS()
+	{
+		return false;
+	}
 
-			//get the first line from the file (should be the WordNet version info)
-			String line = in.readLine();
+	@Override
+	protected Target prepare(Set<Synset> targets) throws JWNLException
+	{
+		//a subclass with its own way of comparing two synsets has to be
+		//asked about each pair
+		if (!usesICValues()) return super.prepare(targets);
 
-			//Check that what we have is actually a file of IC values
-			if (line == null || !line.startsWith("wnver::")) throw new IOException("Malformed InfoContent file");
+		return new ICTarget(targets);
+	}
 
-			//Check that the IC file is meant for use with the version
-			//of WordNet we are currently using
-			if (!line.endsWith("::" + dict.getVersion().getNumber())) throw new IOException("InfoContent file version doesn't match WordNet version");
+	/**
+	 * A set of target synsets with their IC values and ancestors already
+	 * looked up, so that comparing another synset against them only needs
+	 * that synset's ancestors to be found once.
+	 */
+	private class ICTarget extends Target
+	{
+		private final double[] ic;
+		private final Ancestors[] ancestors;
 
-			//Initially set the IC values of the noun and verb roots to 0
-			freq.put("n", 0d);
-			freq.put("v", 0d);
+		ICTarget(Set<Synset> targets) throws JWNLException
+		{
+			super(targets);
 
-			//Get the first line of real data ready for use
-			line = in.readLine();
+			ic = new double[synsets.length];
+			ancestors = new Ancestors[synsets.length];
 
-			while (line != null && !line.equals(""))
+			for (int i = 0; i < synsets.length; ++i)
 			{
-				//while there is still data in the file to process...
+				ic[i] = getIC(synsets[i]);
 
-				//split the line on the whitespace
-				String[] data = line.split("\\s+");
+				//a synset with no IC is never similar to anything
+				if (ic[i] != 0) ancestors[i] = getAncestors(synsets[i]);
+			}
+		}
 
-				//store the frequency (2nd column) against the synset ID (1st column)
-				freq.put(data[0], new Double(data[1]));
+		@Override
+		protected double getSimilarity(Synset synset) throws JWNLException
+		{
+			//only look up the ancestors if one of the pairs isn't cached
+			return getSimilarity(synset, getIC(synset), null);
+		}
 
-				if (data.length == 3 && data[2].equals("ROOT"))
-				{
-					//if there are three columns on this line and the
-					//last one is ROOT then...
+		@Override
+		protected double getSimilarity(Target other) throws JWNLException
+		{
+			ICTarget target = (ICTarget)other;
 
-					//get the POS tag of the synset
-					String pos = data[0].substring(data[0].length() - 1);
+			double max = 0;
 
-					//updated the node frequency for the POS tag
-					freq.put(pos, Double.parseDouble(data[1]) + freq.get(pos));
+			for (int i = 0; i < target.synsets.length; ++i)
+			{
+				double score = getSimilarity(target.synsets[i], target.ic[i], target.ancestors[i]);
+				if (i == 0 || score > max) max = score;
+			}
+
+			return max;
+		}
+
+		/**
+		 * Gets the maximum similarity between a synset and the targets.
+		 * @param synset the synset to compare against the targets
+		 * @param ic1 the IC of the synset
+		 * @param mine the ancestors of the synset, or null if they should be
+		 *        found when they are first needed
+		 * @return the maximum similarity between the synset and any target
+		 */
+		private double getSimilarity(Synset synset, double ic1, Ancestors mine) throws JWNLException
+		{
+			POS pos = synset.getPOS();
+
+			double max = 0;
+
+			for (int i = 0; i < synsets.length; ++i)
+			{
+				double score;
+
+				if (!pos.equals(synsets[i].getPOS()))
+				{
+					score = 0;
+				}
+				else
+				{
+					score = getFromCache(synset, synsets[i]);
+
+					if (Double.isNaN(score))
+					{
+						if (ic1 == 0 || ic[i] == 0)
+						{
+							score = addToCache(synset, synsets[i], 0);
+						}
+						else
+						{
+							if (mine == null) mine = getAncestors(synset);
+
+							double icLCS = getLCSInfoContent(pos, mine, ancestors[i]);
+
+							score = addToCache(synset, synsets[i], Double.isNaN(icLCS) ? 0 : ICMeasure.this.getSimilarity(pos, ic1, ic[i], icLCS));
+						}
+					}
 				}
 
-				//read in the next line from the file ready for processing
-				line = in.readLine();
+				if (i == 0 || score > max) max = score;
 			}
+
+			return max;
+		}
+	}
+
+	/**
+	 * The sorted offsets of a synset and all its hypernyms, along with the IC
+	 * value of each and, for each, the positions in the offsets of its own
+	 * hypernyms.
+	 */
+	private static final class Ancestors
+	{
+		final int[] offsets;
+		final double[] ic;
+		final int[][] above;
+
+		Ancestors(int[] offsets, double[] ic, int[][] above)
+		{
+			this.offsets = offsets;
+			this.ic = ic;
+			this.above = above;
 		}
-		finally
+	}
+
+	/**
+	 * Finds the positions of some synsets in the sorted offsets of the
+	 * ancestors of another synset.
+	 * @param offsets the sorted offsets of the ancestors
+	 * @param values the synsets to find, which should all be ancestors
+	 * @param self the position of a synset to leave out
+	 * @return the positions of the synsets in the offsets
+	 */
+	private static int[] positions(int[] offsets, int[] values, int self)
+	{
+		int[] positions = new int[values.length];
+		int n = 0;
+
+		for (int value : values)
 		{
-			//if we managed to open the file then close it
-			if (in != null) in.close();
+			int position = Arrays.binarySearch(offsets, value);
+			if (position >= 0 && position != self) positions[n++] = position;
 		}
 
+		return (n == positions.length ? positions : Arrays.copyOf(positions, n));
 	}
 
+	/**
+	 * Finds all the ancestors of a synset, using the ancestor index or the
+	 * hypernym graph if possible, and otherwise by walking the hypernym trees.
+	 * @param synset the synset whose ancestors we want
+	 * @return the ancestors of the synset, including the synset itself
+	 * @throws JWNLException if an error occurs accessing WordNet
+	 */
+	private Ancestors getAncestors(Synset synset) throws JWNLException
+	{
+		POS pos = synset.getPOS();
+
+		int[] offsets = (ancestorIndex == null ? null : ancestorIndex.getAncestors(pos, synset.getOffset()));
+
+		if (offsets == null && hypernymGraph != null)
+		{
+			int ordinal = hypernymGraph.getOrdinal(pos, synset.getOffset());
+
+			if (ordinal != -1)
+			{
+				//ordinals are in the same order as offsets so no need to sort
+				int[] ordinals = hypernymGraph.getAncestors(pos, ordinal);
+				double[] ic = new double[ordinals.length];
+				int[][] above = new int[ordinals.length][];
+				offsets = new int[ordinals.length];
+
+				for (int i = 0; i < ordinals.length; ++i)
+				{
+					offsets[i] = (int)hypernymGraph.getOffset(pos, ordinals[i]);
+					ic[i] = graphIC[pos.getId()][ordinals[i]];
+					above[i] = positions(ordinals, hypernymGraph.getAncestors(pos, ordinals[i]), i);
+				}
+
+				return new Ancestors(offsets, ic, above);
+			}
+		}
+
+		double[] ic;
+		int[][] above;
+
+		if (offsets == null)
+		{
+			//every path from the synset up to a root of the hierarchy, and
+			//for each synset on them the synsets above it on any path
+			Map<Integer, Set<Integer>> found = new TreeMap<Integer, Set<Integer>>();
+
+			@SuppressWarnings("unchecked") List<PointerTargetNodeList> trees = PointerUtils.getHypernymTree(synset).toList();
+
+			for (List<PointerTargetNode> tree : trees)
+			{
+				for (int i = 0; i < tree.size(); ++i)
+				{
+					Integer offset = (int)tree.get(i).getSynset().getOffset();
+
+					Set<Integer> hypernyms = found.get(offset);
+					if (hypernyms == null)
+					{
+						hypernyms = new HashSet<Integer>();
+						found.put(offset, hypernyms);
+					}
+
+					for (int j = i + 1; j < tree.size(); ++j)
+					{
+						hypernyms.add((int)tree.get(j).getSynset().getOffset());
+					}
+				}
+			}
+
+			offsets = new int[found.size()];
+			int i = 0;
+			for (int offset : found.keySet())
+			{
+				offsets[i++] = offset;
+			}
+
+			above = new int[offsets.length][];
+			i = 0;
+			for (Set<Integer> hypernyms : found.values())
+			{
+				int[] values = new int[hypernyms.size()];
+				int j = 0;
+				for (int offset : hypernyms)
+				{
+					values[j++] = offset;
+				}
+
+				above[i] = positions(offsets, values, i);
+				++i;
+			}
+		}
+		else
+		{
+			above = new int[offsets.length][];
+			for (int i = 0; i < offsets.length; ++i)
+			{
+				int[] hypernyms = ancestorIndex.getAncestors(pos, offsets[i]);
+				above[i] = (hypernyms == null ? new int[0] : positions(offsets, hypernyms, i));
+			}
+		}
+
+		ic = new double[offsets.length];
+		for (int i = 0; i < offsets.length; ++i)
+		{
+			ic[i] = infoContent.getIC(pos, offsets[i]);
+		}
+
+		return new Ancestors(offsets, ic, above);
+	}
 
 	/**
-	 * Generates the key to access the frequency count data loaded
-	 * from the information content file.
-	 * @param synset the synset for which to generate the key.
-	 * @return the key to access the frequency count map.
+	 * Gets the IC value of the lowest common subsumer of two synsets from
+	 * their ancestors. Common subsumers which are a hypernym of another are
+	 * ignored, so this gives the same result as
+	 * {@link #getLCSInfoContent(Synset, Synset)}.
+	 * @param pos the POS tag of the two synsets
+	 * @param a1 the ancestors of the first synset
+	 * @param a2 the ancestors of the second synset
+	 * @return the IC of the lowest common subsumer of the two synsets, or
+	 *         NaN if the synsets have no common subsumer
 	 */
-	protected String getFreqKey(Synset synset)
+	private double getLCSInfoContent(POS pos, Ancestors a1, Ancestors a2)
 	{
-		//the keys used by the infomation content files are simply
-		//the offsets in the wordnet database (minus leading zeros)
-		//followed by the single character POS tag. So simply build
-		//a key of this type...
+		//for each ancestor of the first synset, 0 if it isn't a common
+		//subsumer, 1 if it is and 2 if it is a hypernym of another one
+		byte[] common = new byte[a1.offsets.length];
+
+		int i = 0;
+		int j = 0;
 
-		return synset.getOffset() + synset.getPOS().getKey();
+		while (i < a1.offsets.length && j < a2.offsets.length)
+		{
+			if (a1.offsets[i] < a2.offsets[j])
+			{
+				++i;
+			}
+			else if (a1.offsets[i] > a2.offsets[j])
+			{
+				++j;
+			}
+			else
+			{
+				common[i] = 1;
+
+				++i;
+				++j;
+			}
+		}
+
+		for (i = 0; i < common.length; ++i)
+		{
+			if (common[i] == 0) continue;
+
+			for (int hypernym : a1.above[i])
+			{
+				if (common[hypernym] != 0) common[hypernym] = 2;
+			}
+		}
+
+		double score = Double.NaN;
+
+		for (i = 0; i < common.length; ++i)
+		{
+			if (common[i] == 1 && (Double.isNaN(score) || a1.ic[i] > score)) score = a1.ic[i];
+		}
+
+		//link the two synsets by the fake root node if we are using one
+		if (Double.isNaN(score) && useSingleRoot()) score = infoContent.getIC(pos, 0);
+
+		return score;
 	}
 
 	/**
@@ -155,23 +583,8 @@ public abstract class ICMeasure extends PathMeasure
 		//so return 0 if the POS tag is something else
 		if (!pos.equals(POS.NOUN) && !pos.equals(POS.VERB)) return 0;
 
-		//Get the frequency of this synset from the storred data
-		Double synFreq = freq.get(getFreqKey(synset));
-
-		//if the frequency isn't defined or it's 0 then simlpy return 0 
-		if (synFreq == null || synFreq.doubleValue() == 0) return 0;
-
-		//Get the frequency of the root node for this POS tage
-		Double rootFreq = freq.get(synset.getPOS().getKey());
-
-		//calcualte the probability for this synset
-		double prob = synFreq.doubleValue() / rootFreq.doubleValue();
-
-		//if the probability is valid then use it to return the IC value
-		if (prob > 0) return -Math.log(prob);
-
-		//something went wrong so assume IC of 0
-		return 0;
+		//the IC values are computed when the file is loaded so just look it up
+		return infoContent.getIC(pos, synset.getOffset());
 	}
 
 	/**
@@ -182,7 +595,7 @@ public abstract class ICMeasure extends PathMeasure
 	 */
 	protected double getFrequency(POS pos)
 	{
-		return freq.get(pos.getKey());
+		return infoContent.getRootFrequency(pos);
 	}
 
 	/**
@@ -192,11 +605,84 @@ public abstract class ICMeasure extends PathMeasure
 	 */
 	protected double getFrequency(Synset synset)
 	{
-		Double f = freq.get(getFreqKey(synset));
+		return infoContent.getFrequency(synset.getPOS(), synset.getOffset());
+	}
 
-		if (f == null || f.doubleValue() == 0) return 0;
+	/**
+	 * Gets the Information Content (IC) value of the lowest common subsumer
+	 * of two synsets.
+	 * <p>
+	 * If an ancestor index or a hypernym graph has been loaded then the
+	 * ancestors of the two synsets are intersected, any common subsumer
+	 * which is a hypernym of another is dropped, and the remaining one with
+	 * the highest IC is used. This gives the same value as
+	 * {@link #getLCSbyIC(Synset, Synset)} without walking the hypernym
+	 * trees, whether or not IC increases anywhere as we move up the
+	 * hierarchy.
+	 * @param s1 the first synset
+	 * @param s2 the second synset
+	 * @return the IC of the lowest common subsumer of the two synsets, or
+	 *         NaN if the synsets have no common subsumer
+	 * @throws JWNLException if an error occurs accessing WordNet
+	 */
+	protected double getLCSInfoContent(Synset s1, Synset s2) throws JWNLException
+	{
+		long offset = findLCS(s1, s2);
 
-		return f.doubleValue();
+		if (offset == NOT_INDEXED)
+		{
+			Synset lcs = getLCSbyIC(s1, s2);
+
+			return (lcs == null ? Double.NaN : getIC(lcs));
+		}
+
+		return (offset == -1 ? Double.NaN : infoContent.getIC(s1.getPOS(), offset));
+	}
+
+	/**
+	 * Returned by {@link #findLCS(Synset, Synset)} when neither the
+	 * ancestor index nor the hypernym graph can be used.
+	 */
+	private static final long NOT_INDEXED = -2;
+
+	/**
+	 * Uses the ancestor index or hypernym graph, whichever is available, to
+	 * find the lowest common subsumer of two synsets.
+	 * @param s1 the first synset
+	 * @param s2 the second synset
+	 * @return the offset of the lowest common subsumer (0 for the fake root
+	 *         node), -1 if there isn't one, or {@link #NOT_INDEXED} if the
+	 *         hypernym trees need to be walked to find it
+	 */
+	private long findLCS(Synset s1, Synset s2)
+	{
+		POS pos = s1.getPOS();
+
+		if (!pos.equals(s2.getPOS())) return NOT_INDEXED;
+
+		long lcs = NOT_INDEXED;
+
+		if (ancestorIndex != null && ancestorIndex.contains(pos, s1.getOffset()) && ancestorIndex.contains(pos, s2.getOffset()))
+		{
+			lcs = ancestorIndex.getLCS(pos, s1.getOffset(), s2.getOffset(), infoContent);
+		}
+		else if (hypernymGraph != null)
+		{
+			int o1 = hypernymGraph.getOrdinal(pos, s1.getOffset());
+			int o2 = hypernymGraph.getOrdinal(pos, s2.getOffset());
+
+			if (o1 != -1 && o2 != -1)
+			{
+				int ordinal = hypernymGraph.getLCS(pos, o1, o2, graphIC[pos.getId()]);
+				lcs = (ordinal == -1 ? -1 : hypernymGraph.getOffset(pos, ordinal));
+			}
+		}
+
+		//if there is no common subsumer then the two synsets are
+		//linked by the fake root node (offset 0), if we are using one
+		if (lcs == -1 && useSingleRoot()) lcs = 0;
+
+		return lcs;
 	}
 
 	/**
@@ -214,6 +700,17 @@ public abstract class ICMeasure extends PathMeasure
 		//   2) Results in shortest path
 		//   3) Greatest depth (i.e. the LCS whose shortest path to root is longest)
 		//Although in here we only need the IC based one
+
+		long offset = findLCS(s1, s2);
+
+		if (offset != NOT_INDEXED)
+		{
+			//the index gives us the answer without walking the hypernym trees
+			if (offset == -1) return null;
+
+			return (offset == 0 ? new Synset(dict, s1.getPOS(), 0) : dict.getSynsetAt(s1.getPOS(), offset));
+		}
+
 		@SuppressWarnings("unchecked") List<PointerTargetNodeList> trees1 = PointerUtils.getHypernymTree(s1).toList();
 
 		@SuppressWarnings("unchecked") List<PointerTargetNodeList> trees2 = PointerUtils.getHypernymTree(s2).toList();
@@ -244,6 +741,11 @@ public abstract class ICMeasure extends PathMeasure
 			}
 		}
 
+		//a candidate from one pair of paths may be a hypernym of a candidate
+		//from another pair, in which case it isn't the lowest subsumer
+		removeHypernyms(pLCS, trees1);
+		removeHypernyms(pLCS, trees2);
+
 		Synset lcs = null;
 		double score = 0;
 
@@ -277,4 +779,30 @@ public abstract class ICMeasure extends PathMeasure
 
 		return lcs;
 	}
+
+	/**
+	 * Removes from a set of common subsumers any that appear above another
+	 * of them on one of the paths to the root of the hierarchy.
+	 * @param candidates the common subsumers of two synsets
+	 * @param trees the paths from one of the synsets to the root
+	 */
+	private static void removeHypernyms(Set<Synset> candidates, List<PointerTargetNodeList> trees)
+	{
+		Set<Synset> hypernyms = new HashSet<Synset>();
+
+		for (List<PointerTargetNode> tree : trees)
+		{
+			boolean below = false;
+
+			for (PointerTargetNode node : tree)
+			{
+				if (below)
+					hypernyms.add(node.getSynset());
+				else
+					below = candidates.contains(node.getSynset());
+			}
+		}
+
+		candidates.removeAll(hypernyms);
+	}
 }
@@ -0,0 +1,561 @@
+/*
+ * InformationContent.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+import net.sf.extjwnl.data.POS;
+
+/**
+ * The frequencies and Information Content (IC) values loaded from an
+ * information content file. For each POS tag the synset offsets are held in
+ * a sorted array alongside arrays of their frequencies and IC values, the
+ * latter being computed once when the file is loaded. An open addressing
+ * index from offset to position is built when the file is loaded, so lookups
+ * take constant time with no allocation. Instances are immutable and so can
+ * be shared between threads.
+ * <p>
+ * Two file formats are supported. The text format, starting with a
+ * <code>wnver::</code> line, is the one used by the perl WordNet::Similarity
+ * package. The binary format, produced by {@link #write(OutputStream)}, holds
+ * the same arrays (including the precomputed IC values) ready to be used
+ * straight from a memory mapped file, so loading only has to build the
+ * lookup index and multiple processes share the same physical pages.
+ * {@link #load(URL, String)} detects which format it has been given.
+ */
+public final class InformationContent
+{
+	/**
+	 * The first four bytes of a binary file, "WNIC"
+	 */
+	private static final int MAGIC = 0x574E4943;
+
+	/**
+	 * The version of the binary format written by this class
+	 */
+	private static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The number of slots needed to index the tables by POS tag ID
+	 */
+	private static final int POS_SLOTS = 5;
+
+	/**
+	 * An instance holding no data, used before a file has been loaded.
+	 */
+	static final InformationContent EMPTY = new InformationContent("", new Table[POS_SLOTS]);
+
+	/**
+	 * The version of WordNet the file was created for
+	 */
+	private final String version;
+
+	/**
+	 * The data for each POS tag, indexed by the ID of the POS tag. Entries
+	 * for POS tags that didn't appear in the file are null.
+	 */
+	private final Table[] tables;
+
+	private InformationContent(String version, Table[] tables)
+	{
+		this.version = version;
+		this.tables = tables;
+	}
+
+	/**
+	 * Get the version of WordNet the information content was created for.
+	 * @return the WordNet version number as given in the file, i.e. 2.1
+	 */
+	public String getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * Get the Information Content (IC) value of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return the IC value of the synset, or 0 if it is unknown
+	 */
+	public double getIC(POS pos, long offset)
+	{
+		Table table = tables[pos.getId()];
+		if (table == null) return 0;
+
+		int i = table.indexOf(offset);
+		return (i < 0 ? 0 : table.ic.get(i));
+	}
+
+	/**
+	 * Get the frequency of a synset.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return the frequency of the synset, or 0 if it is unknown
+	 */
+	public double getFrequency(POS pos, long offset)
+	{
+		Table table = tables[pos.getId()];
+		if (table == null) return 0;
+
+		int i = table.indexOf(offset);
+		return (i < 0 ? 0 : table.frequencies.get(i));
+	}
+
+	/**
+	 * Get the frequency of the root node of the hierarchy for a POS tag,
+	 * which is the sum of the frequencies of all the root synsets.
+	 * @param pos the POS tag of the hierarchy
+	 * @return the frequency of the root node
+	 */
+	public double getRootFrequency(POS pos)
+	{
+		Table table = tables[pos.getId()];
+		return (table == null ? 0 : table.root);
+	}
+
+	/**
+	 * Loads an information content file in either the text or the binary
+	 * format. Binary files given as a <code>file:</code> URL are memory
+	 * mapped rather than read.
+	 * <p>
+	 * Each line of a text file, after the initial <code>wnver::</code> line,
+	 * contains a synset ID (the offset followed by the POS key), its
+	 * frequency and, optionally, the word ROOT to signify that the synset is
+	 * at the top of a hierarchy.
+	 * @param url the location of the file
+	 * @param encoding the encoding of a text file, UTF-8 is used if null
+	 * @return the loaded information content
+	 * @throws IOException if the file can't be read or isn't an information
+	 *         content file
+	 */
+	public static InformationContent load(URL url, String encoding) throws IOException
+	{
+		InputStream in = new BufferedInputStream(url.openStream());
+
+		try
+		{
+			//peek at the start of the file to see which format it is in
+			in.mark(4);
+			int magic = 0;
+			for (int i = 0; i < 4; ++i)
+			{
+				int b = in.read();
+				if (b == -1) break;
+				magic = (magic << 8) | b;
+			}
+			in.reset();
+
+			if (magic != MAGIC) return loadText(in, encoding);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return loadBinary(MappedFiles.map(url));
+	}
+
+	private static InformationContent loadText(InputStream stream, String encoding) throws IOException
+	{
+		if (encoding == null) encoding = "UTF-8";
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(stream, encoding));
+
+		//get the first line from the file (should be the WordNet version info)
+		String line = in.readLine();
+
+		//Check that what we have is actually a file of IC values
+		if (line == null || !line.startsWith("wnver::")) throw new IOException("Malformed InfoContent file");
+
+		Builder builder = new Builder(line.substring(line.lastIndexOf("::") + 2));
+
+		//Get the first line of real data ready for use
+		line = in.readLine();
+
+		while (line != null && !line.equals(""))
+		{
+			//split the line on the whitespace
+			String[] data = line.split("\\s+");
+
+			//the synset ID is the offset followed by a single character POS tag
+			POS pos = POS.getPOSForKey(data[0].charAt(data[0].length() - 1));
+			if (pos == null) throw new IOException("Invalid POS Tag in InfoContent file: " + line);
+
+			builder.add(pos, Long.parseLong(data[0].substring(0, data[0].length() - 1)),
+					Double.parseDouble(data[1]),
+					data.length == 3 && data[2].equals("ROOT"));
+
+			//read in the next line from the file ready for processing
+			line = in.readLine();
+		}
+
+		return builder.build();
+	}
+
+	/**
+	 * Reads the binary format. The layout is a header of
+	 * <ul>
+	 * <li>the magic number and format version (two ints)</li>
+	 * <li>the WordNet version (a short length followed by UTF-8 bytes)</li>
+	 * <li>the number of tables (an int)</li>
+	 * <li>for each table the POS ID and the number of synsets (two ints)
+	 * and the root frequency (a double)</li>
+	 * </ul>
+	 * followed, at the next multiple of eight bytes, by the offsets,
+	 * frequencies and IC values of each table in turn, with the offsets
+	 * padded to a multiple of eight bytes.
+	 */
+	private static InformationContent loadBinary(ByteBuffer buffer) throws IOException
+	{
+		if (buffer.getInt() != MAGIC) throw new IOException("Malformed InfoContent file");
+		if (buffer.getInt() != FORMAT_VERSION) throw new IOException("Unsupported InfoContent file format version");
+
+		byte[] version = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(version);
+
+		int count = buffer.getInt();
+		int[] posIDs = new int[count];
+		int[] sizes = new int[count];
+		double[] roots = new double[count];
+
+		for (int i = 0; i < count; ++i)
+		{
+			posIDs[i] = buffer.getInt();
+			sizes[i] = buffer.getInt();
+			roots[i] = buffer.getDouble();
+
+			if (posIDs[i] <= 0 || posIDs[i] >= POS_SLOTS) throw new IOException("Invalid POS Tag in InfoContent file: " + posIDs[i]);
+		}
+
+		Table[] tables = new Table[POS_SLOTS];
+		int position = MappedFiles.align(buffer.position());
+
+		for (int i = 0; i < count; ++i)
+		{
+			buffer.position(position);
+			IntBuffer offsets = buffer.slice().asIntBuffer();
+			offsets.limit(sizes[i]);
+			position += MappedFiles.align(sizes[i] * 4);
+
+			buffer.position(position);
+			DoubleBuffer frequencies = buffer.slice().asDoubleBuffer();
+			frequencies.limit(sizes[i]);
+			position += sizes[i] * 8;
+
+			buffer.position(position);
+			DoubleBuffer ic = buffer.slice().asDoubleBuffer();
+			ic.limit(sizes[i]);
+			position += sizes[i] * 8;
+
+			tables[posIDs[i]] = new Table(offsets, frequencies, ic, roots[i]);
+		}
+
+		return new InformationContent(new String(version, "UTF-8"), tables);
+	}
+
+	/**
+	 * Writes this information content in the binary format.
+	 * @param out the stream to write to, which is not closed
+	 * @throws IOException if an error occurs writing to the stream
+	 */
+	public void write(OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+		int count = 0;
+		for (Table table : tables)
+		{
+			if (table != null) ++count;
+		}
+
+		data.writeInt(MAGIC);
+		data.writeInt(FORMAT_VERSION);
+		data.writeUTF(version);
+		data.writeInt(count);
+
+		for (int id = 0; id < POS_SLOTS; ++id)
+		{
+			if (tables[id] == null) continue;
+
+			data.writeInt(id);
+			data.writeInt(tables[id].size());
+			data.writeDouble(tables[id].root);
+		}
+
+		MappedFiles.pad(data);
+
+		for (Table table : tables)
+		{
+			if (table == null) continue;
+
+			for (int i = 0; i < table.size(); ++i)
+			{
+				data.writeInt(table.offsets.get(i));
+			}
+			MappedFiles.pad(data);
+
+			for (int i = 0; i < table.size(); ++i)
+			{
+				data.writeDouble(table.frequencies.get(i));
+			}
+
+			for (int i = 0; i < table.size(); ++i)
+			{
+				data.writeDouble(table.ic.get(i));
+			}
+		}
+
+		data.flush();
+	}
+
+	/**
+	 * Writes this information content in the binary format.
+	 * @param file the file to write to
+	 * @throws IOException if an error occurs writing to the file
+	 */
+	public void write(File file) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file);
+		try
+		{
+			write(out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * The data for a single POS tag. The buffers are either views of a
+	 * memory mapped file or simply wrap arrays loaded from a text file, and
+	 * are only ever read using absolute positions so can be shared between
+	 * threads.
+	 */
+	private static final class Table
+	{
+		final IntBuffer offsets;
+		final DoubleBuffer frequencies;
+		final DoubleBuffer ic;
+		final double root;
+
+		/**
+		 * An open addressing (linear probing) table from offset to position,
+		 * holding one more than the position of each offset so that zero
+		 * marks an empty slot. The offsets themselves are only held in the
+		 * offsets buffer. It is at most half full so probes stay short.
+		 */
+		private final int[] slots;
+
+		Table(IntBuffer offsets, DoubleBuffer frequencies, DoubleBuffer ic, double root)
+		{
+			this.offsets = offsets;
+			this.frequencies = frequencies;
+			this.ic = ic;
+			this.root = root;
+
+			int capacity = 16;
+			while (capacity < offsets.limit() * 2) capacity *= 2;
+
+			slots = new int[capacity];
+			int mask = capacity - 1;
+
+			for (int i = 0; i < offsets.limit(); ++i)
+			{
+				int slot = slot(offsets.get(i), mask);
+				while (slots[slot] != 0) slot = (slot + 1) & mask;
+
+				slots[slot] = i + 1;
+			}
+		}
+
+		int size()
+		{
+			return offsets.limit();
+		}
+
+		private static int slot(long offset, int mask)
+		{
+			long hash = offset * 0x9E3779B97F4A7C15L;
+			return (int)(hash ^ (hash >>> 32)) & mask;
+		}
+
+		int indexOf(long offset)
+		{
+			if (offset < 0 || offset > Integer.MAX_VALUE) return -1;
+
+			int mask = slots.length - 1;
+
+			for (int slot = slot(offset, mask); slots[slot] != 0; slot = (slot + 1) & mask)
+			{
+				int i = slots[slot] - 1;
+				if (offsets.get(i) == offset) return i;
+			}
+
+			return -1;
+		}
+	}
+
+	/**
+	 * Computes the IC value of a synset from its frequency.
+	 * @param synFreq the frequency of the synset
+	 * @param rootFreq the frequency of the root of its hierarchy
+	 * @return the IC value of the synset
+	 */
+	static double computeIC(double synFreq, double rootFreq)
+	{
+		//if the frequency is 0 then simply return 0
+		if (synFreq == 0) return 0;
+
+		//calculate the probability for this synset
+		double prob = synFreq / rootFreq;
+
+		//if the probability is valid then use it to return the IC value
+		if (prob > 0) return -Math.log(prob);
+
+		//something went wrong so assume IC of 0
+		return 0;
+	}
+
+	/**
+	 * Builds an information content instance from the frequencies of
+	 * individual synsets, which can be added in any order.
+	 */
+	public static final class Builder
+	{
+		private final String version;
+		private final TableBuilder[] builders = new TableBuilder[POS_SLOTS];
+
+		/**
+		 * Creates a new builder.
+		 * @param version the version of WordNet the frequencies are for
+		 */
+		public Builder(String version)
+		{
+			this.version = version;
+
+			//the noun and verb hierarchies are always present, even if empty
+			builders[POS.NOUN.getId()] = new TableBuilder();
+			builders[POS.VERB.getId()] = new TableBuilder();
+		}
+
+		/**
+		 * Adds the frequency of a synset. If the same synset is added more
+		 * than once the last frequency is used.
+		 * @param pos the POS tag of the synset
+		 * @param offset the offset of the synset
+		 * @param frequency the frequency of the synset
+		 * @param isRoot true if the synset is at the top of a hierarchy, in
+		 *        which case its frequency is added to that of the root node
+		 */
+		public void add(POS pos, long offset, double frequency, boolean isRoot)
+		{
+			if (builders[pos.getId()] == null) builders[pos.getId()] = new TableBuilder();
+
+			builders[pos.getId()].add(offset, frequency, isRoot);
+		}
+
+		/**
+		 * Builds the information content from the frequencies added so far.
+		 * @return the information content
+		 */
+		public InformationContent build()
+		{
+			Table[] tables = new Table[POS_SLOTS];
+			for (int i = 0; i < POS_SLOTS; ++i)
+			{
+				if (builders[i] != null) tables[i] = builders[i].build();
+			}
+
+			return new InformationContent(version, tables);
+		}
+	}
+
+	/**
+	 * Accumulates the synsets for a single POS tag, which may not be in
+	 * offset order, and then sorts them into a table.
+	 */
+	private static final class TableBuilder
+	{
+		private long[] offsets = new long[1024];
+		private double[] frequencies = new double[1024];
+		private int size = 0;
+		private double root = 0;
+
+		void add(long offset, double frequency, boolean isRoot)
+		{
+			if (offset < 0 || offset > Integer.MAX_VALUE) throw new IllegalArgumentException("Invalid synset offset: " + offset);
+
+			if (size == offsets.length)
+			{
+				offsets = Arrays.copyOf(offsets, size * 2);
+				frequencies = Arrays.copyOf(frequencies, size * 2);
+			}
+
+			//remember the position alongside the offset so that sorting
+			//keeps repeated offsets in the order they were added
+			offsets[size] = (offset << 32) | size;
+			frequencies[size] = frequency;
+			++size;
+
+			//update the frequency of the root node for this POS tag
+			if (isRoot) root += frequency;
+		}
+
+		Table build()
+		{
+			long[] sorted = Arrays.copyOf(offsets, size);
+			Arrays.sort(sorted);
+
+			int[] tableOffsets = new int[size];
+			double[] tableFrequencies = new double[size];
+			int n = 0;
+
+			for (int i = 0; i < size; ++i)
+			{
+				int offset = (int)(sorted[i] >>> 32);
+				double frequency = frequencies[(int)sorted[i]];
+
+				//if an offset appears more than once the last one wins
+				if (n > 0 && tableOffsets[n - 1] == offset) --n;
+
+				tableOffsets[n] = offset;
+				tableFrequencies[n] = frequency;
+				++n;
+			}
+
+			//precompute the IC values so that we don't need to take
+			//logs every time a similarity is computed
+			double[] ic = new double[n];
+			for (int i = 0; i < n; ++i)
+			{
+				ic[i] = computeIC(tableFrequencies[i], root);
+			}
+
+			return new Table(IntBuffer.wrap(Arrays.copyOf(tableOffsets, n)),
+					DoubleBuffer.wrap(Arrays.copyOf(tableFrequencies, n)),
+					DoubleBuffer.wrap(ic), root);
+		}
+	}
+}
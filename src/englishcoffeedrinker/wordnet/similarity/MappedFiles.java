@@ -0,0 +1,122 @@
+/*
+ * MappedFiles.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Utility methods for the binary files which are read straight from memory.
+ */
+public final class MappedFiles
+{
+	private MappedFiles()
+	{
+		//a utility class so no instances
+	}
+
+	/**
+	 * Get the contents of a URL as a buffer. Local files are memory mapped,
+	 * so that multiple processes share the same physical pages, while
+	 * anything else is read into memory.
+	 * @param url the location of the file
+	 * @return a buffer over the whole file
+	 * @throws IOException if the file can't be read
+	 */
+	public static ByteBuffer map(URL url) throws IOException
+	{
+		File file = toFile(url);
+
+		if (file == null)
+		{
+			//we can't map something that isn't a file so just read it all
+			InputStream in = url.openStream();
+			try
+			{
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1)
+				{
+					bytes.write(buffer, 0, read);
+				}
+
+				return ByteBuffer.wrap(bytes.toByteArray());
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			//the mapping remains valid after the channel has been closed
+			FileChannel channel = in.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Get the local file a URL points to.
+	 * @param url the URL
+	 * @return the file, or null if the URL doesn't point to a local file
+	 */
+	public static File toFile(URL url)
+	{
+		if (!"file".equals(url.getProtocol())) return null;
+
+		try
+		{
+			return new File(url.toURI());
+		}
+		catch (URISyntaxException e)
+		{
+			return new File(url.getPath());
+		}
+		catch (IllegalArgumentException e)
+		{
+			//relative file URLs, such as file:test/ic.dat, aren't valid URIs
+			return new File(url.getPath());
+		}
+	}
+
+	/**
+	 * Rounds a position up to the next multiple of eight bytes.
+	 */
+	public static int align(int position)
+	{
+		return (position + 7) & ~7;
+	}
+
+	/**
+	 * Pads the output with zeros up to the next multiple of eight bytes.
+	 */
+	public static void pad(DataOutputStream data) throws IOException
+	{
+		while (data.size() % 8 != 0)
+		{
+			data.writeByte(0);
+		}
+	}
+}
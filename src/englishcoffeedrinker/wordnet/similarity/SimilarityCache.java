@@ -0,0 +1,314 @@
+/*
+ * SimilarityCache.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.data.Synset;
+
+/**
+ * A bounded cache of the similarity between pairs of synsets. Each pair is
+ * packed into a single long (the synset offsets and POS tags) with the two
+ * synsets in a canonical order, so (a,b) and (b,a) share an entry, and the
+ * scores are stored unboxed in open addressing tables. Neither looking up
+ * nor storing a score allocates any objects.
+ * <p>
+ * The cache is split into a number of independently locked segments so that
+ * it can be shared between threads without a global lock. Once a segment is
+ * full entries are evicted using the CLOCK (second chance) approximation of
+ * least recently used.
+ */
+final class SimilarityCache
+{
+	/**
+	 * The number of independently locked segments, must be a power of two
+	 */
+	private static final int SEGMENTS = 16;
+
+	/**
+	 * The value returned when a pair of synsets is not in the cache
+	 */
+	static final double MISSING = Double.NaN;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+
+	/**
+	 * Creates a new cache.
+	 * @param maxSize the maximum number of similarities to store, or a
+	 *        negative number if the size of the cache should not be limited.
+	 */
+	SimilarityCache(int maxSize)
+	{
+		for (int i = 0; i < SEGMENTS; ++i)
+		{
+			//split the maximum size exactly between the segments, the first
+			//few taking one extra entry each when it doesn't divide evenly
+			int segmentSize = (maxSize < 0 ? -1 : maxSize / SEGMENTS + (i < maxSize % SEGMENTS ? 1 : 0));
+
+			segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * Packs a synset into an int. The POS tag ID (1 to 4) occupies the low
+	 * three bits so the result is never zero.
+	 * @param pos the POS tag of the synset
+	 * @param offset the offset of the synset
+	 * @return the packed synset
+	 */
+	static long pack(POS pos, long offset)
+	{
+		return ((offset << 3) | pos.getId()) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Builds the key for a pair of synsets. The key is symmetric so the
+	 * order in which the synsets are given makes no difference.
+	 * @param s1 one of the synsets
+	 * @param s2 the other synset
+	 * @return the key for the pair of synsets, which is never zero
+	 */
+	static long key(Synset s1, Synset s2)
+	{
+		return key(pack(s1.getPOS(), s1.getOffset()), pack(s2.getPOS(), s2.getOffset()));
+	}
+
+	/**
+	 * Builds the key for a pair of packed synsets.
+	 * @param p1 one of the packed synsets
+	 * @param p2 the other packed synset
+	 * @return the key for the pair of synsets
+	 */
+	static long key(long p1, long p2)
+	{
+		return (p1 < p2 ? (p2 << 32) | p1 : (p1 << 32) | p2);
+	}
+
+	/**
+	 * Get a previously cached similarity.
+	 * @param key the key of the pair of synsets
+	 * @return the similarity or {@link #MISSING} if it is not in the cache
+	 */
+	double get(long key)
+	{
+		long h = hash(key);
+		return segments[(int)(h >>> 60) & (SEGMENTS - 1)].get(key, (int)h);
+	}
+
+	/**
+	 * Adds a similarity to the cache.
+	 * @param key the key of the pair of synsets
+	 * @param sim the similarity between the pair of synsets
+	 */
+	void put(long key, double sim)
+	{
+		long h = hash(key);
+		segments[(int)(h >>> 60) & (SEGMENTS - 1)].put(key, (int)h, sim);
+	}
+
+	/**
+	 * The number of similarities currently in the cache.
+	 * @return the size of the cache
+	 */
+	int size()
+	{
+		int size = 0;
+		for (Segment segment : segments)
+		{
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Spreads the bits of the key (the finaliser from MurmurHash3) so that
+	 * keys which differ only in a few bits end up far apart.
+	 */
+	private static long hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	/**
+	 * A single segment of the cache, an open addressing (linear probing)
+	 * table guarded by its own lock. A key of zero marks an empty slot.
+	 */
+	private static final class Segment
+	{
+		private static final int INITIAL_CAPACITY = 16;
+
+		/**
+		 * The maximum number of entries, or -1 if unlimited
+		 */
+		private final int maxSize;
+
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private double[] values = new double[INITIAL_CAPACITY];
+
+		/**
+		 * The CLOCK reference bits, set whenever an entry is used
+		 */
+		private boolean[] referenced = new boolean[INITIAL_CAPACITY];
+
+		private int size = 0;
+		private int hand = 0;
+
+		Segment(int maxSize)
+		{
+			this.maxSize = maxSize;
+		}
+
+		synchronized int size()
+		{
+			return size;
+		}
+
+		synchronized double get(long key, int hash)
+		{
+			int mask = keys.length - 1;
+
+			for (int i = hash & mask; keys[i] != 0; i = (i + 1) & mask)
+			{
+				if (keys[i] == key)
+				{
+					referenced[i] = true;
+					return values[i];
+				}
+			}
+
+			return MISSING;
+		}
+
+		synchronized void put(long key, int hash, double sim)
+		{
+			if (maxSize == 0) return;
+
+			int mask = keys.length - 1;
+			int i = hash & mask;
+
+			for (; keys[i] != 0; i = (i + 1) & mask)
+			{
+				if (keys[i] == key)
+				{
+					//already cached so just update the value
+					values[i] = sim;
+					referenced[i] = true;
+					return;
+				}
+			}
+
+			if (maxSize > 0 && size >= maxSize)
+			{
+				//the segment is full so make room and then find the slot again
+				//as the eviction may have moved entries around
+				evict();
+				put(key, hash, sim);
+				return;
+			}
+
+			if ((size + 1) * 2 > keys.length)
+			{
+				//keep the table at most half full so probe sequences stay short
+				resize(keys.length * 2);
+				put(key, hash, sim);
+				return;
+			}
+
+			keys[i] = key;
+			values[i] = sim;
+			referenced[i] = false;
+			++size;
+		}
+
+		/**
+		 * Evicts one entry, giving recently used entries a second chance.
+		 */
+		private void evict()
+		{
+			int mask = keys.length - 1;
+
+			while (true)
+			{
+				hand = (hand + 1) & mask;
+
+				if (keys[hand] == 0) continue;
+
+				if (referenced[hand])
+				{
+					referenced[hand] = false;
+				}
+				else
+				{
+					removeAt(hand);
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Removes the entry in the given slot, shifting back any later
+		 * entries in the same probe sequence so that no tombstones are needed.
+		 */
+		private void removeAt(int slot)
+		{
+			int mask = keys.length - 1;
+			int hole = slot;
+
+			for (int i = (slot + 1) & mask; keys[i] != 0; i = (i + 1) & mask)
+			{
+				int home = (int)hash(keys[i]) & mask;
+
+				//an entry can fill the hole if the hole is on the probe
+				//sequence between its home slot and where it currently is
+				if (((i - home) & mask) >= ((i - hole) & mask))
+				{
+					keys[hole] = keys[i];
+					values[hole] = values[i];
+					referenced[hole] = referenced[i];
+					hole = i;
+				}
+			}
+
+			keys[hole] = 0;
+			referenced[hole] = false;
+			--size;
+		}
+
+		private void resize(int capacity)
+		{
+			long[] oldKeys = keys;
+			double[] oldValues = values;
+			boolean[] oldReferenced = referenced;
+
+			keys = new long[capacity];
+			values = new double[capacity];
+			referenced = new boolean[capacity];
+			hand = 0;
+
+			int mask = capacity - 1;
+
+			for (int j = 0; j < oldKeys.length; ++j)
+			{
+				if (oldKeys[j] == 0) continue;
+
+				int i = (int)hash(oldKeys[j]) & mask;
+				while (keys[i] != 0) i = (i + 1) & mask;
+
+				keys[i] = oldKeys[j];
+				values[i] = oldValues[j];
+				referenced[i] = oldReferenced[j];
+			}
+		}
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * SimilarityMatrix.java
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ */
+
+package englishcoffeedrinker.wordnet.similarity;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.sf.extjwnl.JWNLException;
+
+/**
+ * Fills a similarity matrix in parallel. The rows of the matrix are split
+ * in half until each task only has a small number of cells to compute.
+ */
+final class SimilarityMatrix extends RecursiveAction
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The maximum number of cells a single task should compute
+	 */
+	private static final int THRESHOLD = 1024;
+
+	/**
+	 * The pool the matrices are computed in, which uses one thread for each
+	 * available processor
+	 */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	private final double[][] matrix;
+	private final SimilarityMeasure.Target[] rows;
+	private final SimilarityMeasure.Target[] columns;
+	private final boolean symmetric;
+	private final boolean acrossPOS;
+	private final int from;
+	private final int to;
+
+	private SimilarityMatrix(double[][] matrix, SimilarityMeasure.Target[] rows, SimilarityMeasure.Target[] columns,
+			boolean symmetric, boolean acrossPOS, int from, int to)
+	{
+		this.matrix = matrix;
+		this.rows = rows;
+		this.columns = columns;
+		this.symmetric = symmetric;
+		this.acrossPOS = acrossPOS;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Computes the similarity between every row and every column.
+	 * @param rows the prepared synset sets for the rows of the matrix
+	 * @param columns the prepared synset sets for the columns of the matrix
+	 * @param symmetric true if the rows and columns are the same and the
+	 *        measure is symmetric, in which case only half the matrix is
+	 *        computed and the other half is copied from it
+	 * @param acrossPOS false if sets which don't share a POS tag always
+	 *        have a similarity of 0
+	 * @return the filled matrix
+	 * @throws JWNLException if an error occurs accessing WordNet
+	 */
+	static double[][] compute(SimilarityMeasure.Target[] rows, SimilarityMeasure.Target[] columns,
+			boolean symmetric, boolean acrossPOS) throws JWNLException
+	{
+		double[][] matrix = new double[rows.length][columns.length];
+
+		try
+		{
+			POOL.invoke(new SimilarityMatrix(matrix, rows, columns, symmetric, acrossPOS, 0, rows.length));
+		}
+		catch (RuntimeException e)
+		{
+			//a task that failed on another thread is rethrown wrapped in
+			//a new exception, so look down the causes for the original
+			for (Throwable cause = e; cause != null; cause = cause.getCause())
+			{
+				if (cause instanceof WordNetFailure) throw (JWNLException)cause.getCause();
+			}
+			throw e;
+		}
+
+		return matrix;
+	}
+
+	@Override
+	protected void compute()
+	{
+		if (to - from > 1 && (long)(to - from) * columns.length > THRESHOLD)
+		{
+			int middle = (from + to) >>> 1;
+			invokeAll(new SimilarityMatrix(matrix, rows, columns, symmetric, acrossPOS, from, middle),
+					new SimilarityMatrix(matrix, rows, columns, symmetric, acrossPOS, middle, to));
+			return;
+		}
+
+		try
+		{
+			for (int i = from; i < to; ++i)
+			{
+				//in the symmetric case each task fills the upper half of
+				//its rows and the matching lower half of its columns, so
+				//no two tasks ever write the same cell
+				for (int j = (symmetric ? i : 0); j < columns.length; ++j)
+				{
+					double sim = 0;
+
+					if (acrossPOS || (rows[i].posTags & columns[j].posTags) != 0)
+					{
+						sim = columns[j].getSimilarity(rows[i]);
+					}
+
+					matrix[i][j] = sim;
+					if (symmetric) matrix[j][i] = sim;
+				}
+			}
+		}
+		catch (JWNLException e)
+		{
+			throw new WordNetFailure(e);
+		}
+	}
+
+	/**
+	 * Carries a WordNet error out of a task, so that it can be told apart
+	 * from the exceptions the fork/join framework wraps it in
+	 */
+	private static final class WordNetFailure extends RuntimeException
+	{
+		private static final long serialVersionUID = 1L;
+
+		WordNetFailure(JWNLException cause)
+		{
+			super(cause);
+		}
+	}
+}
@@ -18,10 +18,11 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -46,9 +47,9 @@ public abstract class SimilarityMeasure
 	private Map<String, Set<Synset>> domainMappings = new HashMap<String, Set<Synset>>();
 
 	/**
-	 * The maximum size the cache can grow to
+	 * The default maximum size of the cache
 	 */
-	private int cacheSize = 5000;
+	private static final int DEFAULT_CACHE_SIZE = 5000;
 
 	/**
 	*  The JWNL dictionary to use for the instance.
@@ -58,32 +59,25 @@ public abstract class SimilarityMeasure
 	/**
 	 * To speed up computation of the similarity between two synsets
 	 * we cache each similarity that is computed so we only have to
-	 * do each one once.
+	 * do each one once. The cache is safe for concurrent use so that a
+	 * single measure can be shared between threads.
 	 */
-	private Map<String, Double> cache = new LinkedHashMap<String, Double>(16, 0.75f, true) {
-		public boolean removeEldestEntry(Map.Entry<String, Double> eldest)
-		{
-			//if the size is less than zero then the user is asking us
-			//not to limit the size of the cache so return false
-			if (cacheSize < 0) return false;
-
-			//if the cache has crown bigger than it's max size return true
-			return size() > cacheSize;
-		}
-	};
+	private SimilarityCache cache = new SimilarityCache(DEFAULT_CACHE_SIZE);
 
 	/**
 	 * Get a previously computed similarity between two synsets from the cache.
+	 * The cache is symmetric so the order of the synsets doesn't matter,
+	 * which means it should only be used by symmetric measures.
 	 * @param s1 the first synset between which we are looking for the
 	 *        similarity.
 	 * @param s2 the other synset between which we are looking for the
 	 *        similarity.
-	 * @return The similarity between the two sets or null
+	 * @return The similarity between the two sets or NaN
 	 *         if it is not in the cache.
 	 */
-	protected final Double getFromCache(Synset s1, Synset s2)
+	protected final double getFromCache(Synset s1, Synset s2)
 	{
-		return cache.get(s1.getKey() + "-" + s2.getKey());
+		return cache.get(SimilarityCache.key(s1, s2));
 	}
 
 	/**
@@ -96,7 +90,7 @@ public abstract class SimilarityMeasure
 	 */
 	protected final double addToCache(Synset s1, Synset s2, double sim)
 	{
-		cache.put(s1.getKey() + "-" + s2.getKey(), sim);
+		cache.put(SimilarityCache.key(s1, s2), sim);
 
 		return sim;
 	}
@@ -212,7 +206,7 @@ public abstract class SimilarityMeasure
 
 		// Set the size of the cache for the similarity measure
 		String cSizeString = params.remove("cache");
-		if (cSizeString != null) sim.cacheSize = Integer.parseInt(cSizeString);
+		if (cSizeString != null) sim.cache = new SimilarityCache(Integer.parseInt(cSizeString));
 
 		// Load any mapping file that might have been supplied.
 		String mapUrl = params.remove("mapping");
@@ -328,6 +322,248 @@ public abstract class SimilarityMeasure
 		return sim;
 	}
 
+	/**
+	 * Computes the similarity between one fixed set of target synsets and
+	 * each of a list of other synset sets. Any work that only depends on the
+	 * targets is done once, rather than once per comparison, so this is much
+	 * faster than repeatedly calling
+	 * {@link #getSimilarity(String, String, Set, Set)}.
+	 * @param targets the synsets every set is compared against
+	 * @param candidates the synset sets to compare against the targets
+	 * @return the maximum similarity between each candidate set and the
+	 *         targets, in the same order as the candidates. Empty sets, and
+	 *         every set if there are no targets, have a similarity of 0.
+	 * @throws JWNLException if an error occurs accessing WordNet.
+	 */
+	public final double[] getSimilarities(Set<Synset> targets, List<Set<Synset>> candidates) throws JWNLException
+	{
+		double[] scores = new double[candidates.size()];
+
+		//nothing can be similar to an empty target
+		if (targets.isEmpty()) return scores;
+
+		Target target = prepare(targets);
+
+		int i = 0;
+		for (Set<Synset> synsets : candidates)
+		{
+			double max = 0;
+			boolean found = false;
+
+			for (Synset synset : synsets)
+			{
+				double score = target.getSimilarity(synset);
+
+				if (!found || score > max)
+				{
+					max = score;
+					found = true;
+				}
+			}
+
+			scores[i++] = max;
+		}
+
+		return scores;
+	}
+
+	/**
+	 * Computes the similarity between one fixed target word and each of a
+	 * list of other words. Words can be encoded as for
+	 * {@link #getSimilarity(String, String)}.
+	 * @param target the word every other word is compared against
+	 * @param words the words to compare against the target
+	 * @return the similarity between each word and the target, or 0 if either
+	 *         word isn't in WordNet
+	 * @throws JWNLException if an error occurs accessing WordNet.
+	 */
+	public final double[] getSimilarities(String target, List<String> words) throws JWNLException
+	{
+		List<Set<Synset>> candidates = new ArrayList<Set<Synset>>(words.size());
+		for (String word : words)
+		{
+			candidates.add(getSynsets(word));
+		}
+
+		return getSimilarities(getSynsets(target), candidates);
+	}
+
+	/**
+	 * Prepares a set of synsets so that they can be efficiently compared
+	 * against many other synsets. Measures which can precompute something
+	 * about the targets should override this.
+	 * @param targets the synsets to prepare
+	 * @return the prepared targets
+	 * @throws JWNLException if an error occurs accessing WordNet.
+	 */
+	protected Target prepare(Set<Synset> targets) throws JWNLException
+	{
+		return new Target(targets);
+	}
+
+	/**
+	 * A set of synsets that are going to be compared against many others.
+	 * This default implementation simply calls
+	 * {@link SimilarityMeasure#getSimilarity(Synset, Synset)} for each pair.
+	 */
+	protected class Target
+	{
+		/**
+		 * The target synsets
+		 */
+		protected final Synset[] synsets;
+
+		/**
+		 * A bit set of the IDs of the POS tags of the target synsets
+		 */
+		final int posTags;
+
+		protected Target(Set<Synset> targets)
+		{
+			synsets = targets.toArray(new Synset[targets.size()]);
+
+			int tags = 0;
+			for (Synset synset : synsets)
+			{
+				tags |= 1 << synset.getPOS().getId();
+			}
+			posTags = tags;
+		}
+
+		/**
+		 * Gets the maximum similarity between a synset and the targets.
+		 * @param synset the synset to compare against the targets
+		 * @return the maximum similarity between the synset and any target
+		 * @throws JWNLException if an error occurs accessing WordNet.
+		 */
+		protected double getSimilarity(Synset synset) throws JWNLException
+		{
+			double max = 0;
+
+			for (int i = 0; i < synsets.length; ++i)
+			{
+				double score = SimilarityMeasure.this.getSimilarity(synset, synsets[i]);
+				if (i == 0 || score > max) max = score;
+			}
+
+			return max;
+		}
+
+		/**
+		 * Gets the maximum similarity between any of the synsets of another
+		 * target and the synsets of this target.
+		 * @param other the target whose synsets are compared against these
+		 * @return the maximum similarity between any pair of synsets, or 0
+		 *         if either target is empty
+		 * @throws JWNLException if an error occurs accessing WordNet.
+		 */
+		protected double getSimilarity(Target other) throws JWNLException
+		{
+			double max = 0;
+
+			for (int i = 0; i < other.synsets.length; ++i)
+			{
+				double score = getSimilarity(other.synsets[i]);
+				if (i == 0 || score > max) max = score;
+			}
+
+			return max;
+		}
+	}
+
+	/**
+	 * Is the similarity between two synsets the same whichever order they
+	 * are given in? Measures which are should override this so that
+	 * similarity matrices can be computed in half the time.
+	 * @return true if the measure is symmetric, false otherwise
+	 */
+	protected boolean isSymmetric()
+	{
+		return false;
+	}
+
+	/**
+	 * Can synsets with different POS tags be similar? Measures which always
+	 * give such pairs a similarity of 0 should override this so that they are
+	 * skipped when computing similarity matrices.
+	 * @return true if synsets with different POS tags can be similar
+	 */
+	protected boolean comparesAcrossPOS()
+	{
+		return true;
+	}
+
+	/**
+	 * Computes the similarity between every pair of words from two lists,
+	 * using all the available processors. Words can be encoded as for
+	 * {@link #getSimilarity(String, String)}.
+	 * @param words1 the words for the rows of the matrix
+	 * @param words2 the words for the columns of the matrix
+	 * @return the matrix of similarities, where the similarity between the
+	 *         ith word of the first list and the jth word of the second list is
+	 *         at [i][j]. Words that aren't in WordNet have a similarity of 0.
+	 * @throws JWNLException if an error occurs accessing WordNet.
+	 */
+	public final double[][] getSimilarityMatrix(List<String> words1, List<String> words2) throws JWNLException
+	{
+		List<Set<Synset>> synsets1 = new ArrayList<Set<Synset>>(words1.size());
+		for (String word : words1)
+		{
+			synsets1.add(getSynsets(word));
+		}
+
+		List<Set<Synset>> synsets2 = synsets1;
+		if (words1 != words2 && !words1.equals(words2))
+		{
+			synsets2 = new ArrayList<Set<Synset>>(words2.size());
+			for (String word : words2)
+			{
+				synsets2.add(getSynsets(word));
+			}
+		}
+
+		return getSynsetSimilarityMatrix(synsets1, synsets2);
+	}
+
+	/**
+	 * Computes the maximum similarity between every pair of synset sets from
+	 * two lists, using all the available processors. If the two lists are the
+	 * same and the measure is symmetric then only half the matrix is
+	 * computed. Each set is prepared only once, and pairs of sets that don't
+	 * share a POS tag are skipped if the measure doesn't compare across POS
+	 * tags.
+	 * @param synsets1 the synset sets for the rows of the matrix
+	 * @param synsets2 the synset sets for the columns of the matrix
+	 * @return the matrix of similarities, where the similarity between the
+	 *         ith set of the first list and the jth set of the second list is
+	 *         at [i][j]. Empty sets have a similarity of 0.
+	 * @throws JWNLException if an error occurs accessing WordNet.
+	 */
+	public final double[][] getSynsetSimilarityMatrix(List<Set<Synset>> synsets1, List<Set<Synset>> synsets2) throws JWNLException
+	{
+		boolean symmetric = isSymmetric() && (synsets1 == synsets2 || synsets1.equals(synsets2));
+
+		//prepare everything up front, on this thread, so the parallel
+		//part doesn't need to do anything but compare the sets
+		Target[] rows = prepare(synsets1);
+		Target[] columns = (symmetric ? rows : prepare(synsets2));
+
+		return SimilarityMatrix.compute(rows, columns, symmetric, comparesAcrossPOS());
+	}
+
+	private Target[] prepare(List<Set<Synset>> synsets) throws JWNLException
+	{
+		Target[] targets = new Target[synsets.size()];
+
+		int i = 0;
+		for (Set<Synset> set : synsets)
+		{
+			targets[i++] = prepare(set);
+		}
+
+		return targets;
+	}
+
 	/**
 	 * Get the similarity between two words. The words can be specified either
 	 * as just the word or in an encoded form including the POS tag and possibly
@@ -0,0 +1,28 @@
+package englishcoffeedrinker.wordnet.util;
+
+import englishcoffeedrinker.wordnet.similarity.AncestorIndex;
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Builds the index of synset ancestors used by the information content measures to find lowest common subsumers.
+ * The index only needs to be built once for each version of WordNet.
+ *
+ * Usage: <code>AncestorIndexBuilder wordnet.xml output</code>
+ */
+public class AncestorIndexBuilder {
+    public static void main(String[] args) throws IOException, JWNLException {
+        if (args.length != 2) {
+            System.err.println("Usage: AncestorIndexBuilder wordnet.xml output");
+            System.exit(1);
+        }
+
+        Dictionary dict = Dictionary.getInstance(new FileInputStream(args[0]));
+
+        AncestorIndex.build(dict).write(new File(args[1]));
+    }
+}
@@ -0,0 +1,97 @@
+package englishcoffeedrinker.wordnet.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of compound terms, such as <code>coffee house</code>, keyed on their words. Finding the compounds in a
+ * sentence takes a single pass, trying at each word to follow the trie as far as the following words allow.
+ * The trie can be shared between threads once every compound has been added.
+ */
+class CompoundTrie {
+    private static final class Node {
+        /**
+         * The nodes for each word that can follow this one, or null if there are none.
+         */
+        Map<String, Node> children;
+
+        /**
+         * The compound ending at this node, or null if the words so far are only the start of longer compounds.
+         */
+        String compound;
+
+        Node child(String word) {
+            return children == null ? null : children.get(word);
+        }
+    }
+
+    private final Node root = new Node();
+    private int size = 0;
+
+    /**
+     * Adds a compound, whose words are separated by single spaces.
+     */
+    void add(String compound) {
+        String[] words = compound.split(" ");
+
+        Node node = root;
+        for (String word : words) {
+            Node child = node.child(word);
+
+            if (child == null) {
+                child = new Node();
+                if (node.children == null) node.children = new HashMap<String, Node>(4);
+                node.children.put(word, child);
+            }
+
+            node = child;
+        }
+
+        if (node.compound == null) size++;
+        node.compound = compound;
+    }
+
+    /**
+     * Get the number of compounds in the trie.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Replaces each compound in a sentence with a single word. At each position the longest compound starting there
+     * is used, and the search carries on after its last word, so compounds never overlap.
+     *
+     * @param sentence The words of the sentence
+     * @param maxWords The number of words in the longest compound to look for
+     * @return The words of the sentence with the compounds joined
+     */
+    List<String> compoundify(List<String> sentence, int maxWords) {
+        List<String> result = new ArrayList<String>(sentence.size());
+
+        int size = sentence.size();
+        int i = 0;
+        while (i < size) {
+            // Follow the trie for as long as the words allow, remembering the longest compound of two or more words.
+            String longest = null;
+            int longestEnd = i + 1;
+
+            Node node = root.child(sentence.get(i));
+            for (int end = i + 1; node != null && end < size && end - i < maxWords; end++) {
+                node = node.child(sentence.get(end));
+
+                if (node != null && node.compound != null) {
+                    longest = node.compound;
+                    longestEnd = end + 1;
+                }
+            }
+
+            result.add(longest == null ? sentence.get(i) : longest);
+            i = longestEnd;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,353 @@
+package englishcoffeedrinker.wordnet.util;
+
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import net.sf.extjwnl.data.POS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The counts of a hypernym hierarchy propagated up from its raw counts without recursion. The synsets are split into
+ * levels by their height above the leaves, so every synset is in a higher level than all of its hyponyms. The levels
+ * are summed from the bottom up, and as the synsets of a level don't depend on each other each large level is summed
+ * in parallel, as are the hierarchies of each POS.
+ *
+ * The result is exactly that of walking down from each root: a synset that was counted keeps its count, and isn't
+ * walked through, while any other synset is given the sum of its hyponyms, added up in hyponym order. Only the synsets
+ * such a walk would reach are added to the counts, and the value of every root is added to the fictitious root 0.
+ *
+ * Once propagated, further raw counts can be added with {@link #update(OffsetCounts, OffsetCounts)}, which only sums
+ * the synsets above the changed ones again.
+ */
+final class FrequencyPropagation {
+    /**
+     * The largest number of synsets in a level which are summed by a single task.
+     */
+    private static final int THRESHOLD = 4096;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
+    private final HypernymGraph graph;
+    private final POS pos;
+
+    /**
+     * The propagated value of each synset.
+     */
+    private final float[] values;
+
+    /**
+     * Whether each synset has a raw count, in which case it keeps it.
+     */
+    private final boolean[] counted;
+
+    /**
+     * Whether each synset is reached by walking down from the roots.
+     */
+    private final boolean[] reached;
+
+    /**
+     * Whether each synset is the root of a hierarchy, i.e. it has no hypernyms.
+     */
+    private final boolean[] roots;
+
+    /**
+     * The level of each synset, its height above the leaves.
+     */
+    private final int[] levels;
+
+    private FrequencyPropagation(HypernymGraph graph, POS pos) {
+        this.graph = graph;
+        this.pos = pos;
+
+        int size = graph.size(pos);
+        values = new float[size];
+        counted = new boolean[size];
+        reached = new boolean[size];
+        roots = new boolean[size];
+        levels = new int[size];
+
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            roots[ordinal] = (graph.getHypernymCount(pos, ordinal) == 0);
+        }
+    }
+
+    /**
+     * Propagates the raw counts of each POS.
+     *
+     * @param graph The hypernym hierarchies to propagate through
+     * @param pos The POS tags of the hierarchies
+     * @param counts The raw counts for each POS tag, which are left unchanged
+     * @return The propagated counts of each POS tag
+     * @throws IllegalStateException If one of the hierarchies contains a cycle
+     */
+    static FrequencyPropagation[] propagate(HypernymGraph graph, POS[] pos, OffsetCounts[] counts) {
+        FrequencyPropagation[] propagated = new FrequencyPropagation[pos.length];
+        for (int i = 0; i < pos.length; i++) {
+            propagated[i] = new FrequencyPropagation(graph, pos[i]);
+        }
+
+        // Each hierarchy is propagated at the same time.
+        List<Hierarchy> tasks = new ArrayList<Hierarchy>(propagated.length);
+        for (int i = 0; i < propagated.length; i++) {
+            Hierarchy task = new Hierarchy(propagated[i], counts[i]);
+            POOL.execute(task);
+            tasks.add(task);
+        }
+
+        for (Hierarchy task : tasks) {
+            task.join();
+        }
+
+        return propagated;
+    }
+
+    private void propagate(OffsetCounts raw) {
+        int size = values.length;
+
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            long offset = graph.getOffset(pos, ordinal);
+            if (raw.containsKey(offset)) {
+                values[ordinal] = raw.get(offset);
+                counted[ordinal] = true;
+            }
+        }
+
+        // The synsets ordered by level, and the start of each level in that order.
+        int[] order = new int[size];
+        List<Integer> starts = new ArrayList<Integer>();
+        sortByLevel(order, starts);
+
+        for (int level = 0; level < starts.size(); level++) {
+            int from = starts.get(level);
+            int to = (level + 1 < starts.size() ? starts.get(level + 1) : size);
+
+            new Level(order, from, to).invoke();
+        }
+
+        // Work down from the roots, as the recursive walk did, to find the synsets it reached.
+        for (int i = size - 1; i >= 0; i--) {
+            int ordinal = order[i];
+
+            if (roots[ordinal]) reached[ordinal] = true;
+
+            if (reached[ordinal] && !counted[ordinal]) {
+                for (int j = 0; j < graph.getHyponymCount(pos, ordinal); j++) {
+                    reached[graph.getHyponym(pos, ordinal, j)] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the synsets by their height above the leaves, starting from the leaves and only moving a synset up
+     * once all of its hyponyms have been placed.
+     */
+    private void sortByLevel(int[] order, List<Integer> starts) {
+        int size = order.length;
+
+        // The number of hyponyms of each synset which haven't been placed yet.
+        int[] remaining = new int[size];
+
+        int placed = 0;
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            remaining[ordinal] = graph.getHyponymCount(pos, ordinal);
+            if (remaining[ordinal] == 0) order[placed++] = ordinal;
+        }
+
+        int from = 0;
+        while (from < placed) {
+            int level = starts.size();
+            starts.add(from);
+
+            int to = placed;
+            for (int i = from; i < to; i++) {
+                int ordinal = order[i];
+                levels[ordinal] = level;
+
+                for (int j = 0; j < graph.getHypernymCount(pos, ordinal); j++) {
+                    int hypernym = graph.getHypernym(pos, ordinal, j);
+                    if (--remaining[hypernym] == 0) order[placed++] = hypernym;
+                }
+            }
+
+            from = to;
+        }
+
+        if (placed != size) {
+            throw new IllegalStateException("The " + pos.getLabel() + " hypernym hierarchy contains a cycle");
+        }
+    }
+
+    /**
+     * Sums the hyponyms of a synset, unless it has a count of its own which it keeps.
+     */
+    private void sum(int ordinal) {
+        if (counted[ordinal]) return;
+
+        float sum = 0;
+        for (int j = 0; j < graph.getHyponymCount(pos, ordinal); j++) {
+            sum += values[graph.getHyponym(pos, ordinal, j)];
+        }
+        values[ordinal] = sum;
+    }
+
+    /**
+     * Orders the synsets in a set by level.
+     */
+    private long key(int ordinal) {
+        return ((long) levels[ordinal] << 32) | ordinal;
+    }
+
+    /**
+     * Updates the propagated counts after some raw counts have been added to. Only the synsets above the changed
+     * ones are summed again, so the cost depends on the number of changed synsets rather than on the size of the
+     * hierarchy. The result is exactly that of propagating all of the raw counts again.
+     *
+     * @param raw All of the raw counts
+     * @param changed The synsets whose raw counts have changed since they were last propagated
+     */
+    void update(OffsetCounts raw, OffsetCounts changed) {
+        // The synsets which need to be summed again, lowest level first.
+        TreeSet<Long> above = new TreeSet<Long>();
+
+        // The synsets which may no longer be reached, as one of their hypernyms now keeps its own count.
+        TreeSet<Long> below = new TreeSet<Long>();
+
+        for (int slot = 0; slot < changed.slots(); slot++) {
+            if (!changed.isUsed(slot)) continue;
+
+            int ordinal = graph.getOrdinal(pos, changed.offsetAt(slot));
+            if (ordinal == -1) continue;
+
+            if (!counted[ordinal]) {
+                counted[ordinal] = true;
+                for (int j = 0; j < graph.getHyponymCount(pos, ordinal); j++) {
+                    below.add(key(graph.getHyponym(pos, ordinal, j)));
+                }
+            }
+
+            values[ordinal] = raw.get(changed.offsetAt(slot));
+
+            for (int j = 0; j < graph.getHypernymCount(pos, ordinal); j++) {
+                above.add(key(graph.getHypernym(pos, ordinal, j)));
+            }
+        }
+
+        while (!above.isEmpty()) {
+            int ordinal = (int) (long) above.pollFirst();
+            if (counted[ordinal]) continue;
+
+            float old = values[ordinal];
+            sum(ordinal);
+
+            // Only carry on up if the value actually changed.
+            if (Float.floatToIntBits(old) == Float.floatToIntBits(values[ordinal])) continue;
+
+            for (int j = 0; j < graph.getHypernymCount(pos, ordinal); j++) {
+                above.add(key(graph.getHypernym(pos, ordinal, j)));
+            }
+        }
+
+        while (!below.isEmpty()) {
+            int ordinal = (int) (long) below.pollLast();
+
+            boolean isReached = roots[ordinal];
+            for (int j = 0; !isReached && j < graph.getHypernymCount(pos, ordinal); j++) {
+                int hypernym = graph.getHypernym(pos, ordinal, j);
+                isReached = reached[hypernym] && !counted[hypernym];
+            }
+
+            if (isReached == reached[ordinal]) continue;
+            reached[ordinal] = isReached;
+
+            if (!counted[ordinal]) {
+                for (int j = 0; j < graph.getHyponymCount(pos, ordinal); j++) {
+                    below.add(key(graph.getHyponym(pos, ordinal, j)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the propagated counts: the raw counts, plus each reached synset without a count of its own, plus the
+     * fictitious root 0.
+     *
+     * @param raw All of the raw counts
+     */
+    OffsetCounts getCounts(OffsetCounts raw) {
+        OffsetCounts counts = new OffsetCounts(raw);
+
+        float root = raw.get(0l);
+        for (int ordinal = 0; ordinal < values.length; ordinal++) {
+            if (roots[ordinal]) root += values[ordinal];
+        }
+        counts.put(0l, root);
+
+        for (int ordinal = 0; ordinal < values.length; ordinal++) {
+            if (reached[ordinal] && !counted[ordinal]) counts.put(graph.getOffset(pos, ordinal), values[ordinal]);
+        }
+
+        return counts;
+    }
+
+    /**
+     * Checks if a synset is the root of a hierarchy. Synsets which aren't in the hierarchy are never roots.
+     */
+    boolean isRoot(long offset) {
+        int ordinal = graph.getOrdinal(pos, offset);
+        return ordinal != -1 && roots[ordinal];
+    }
+
+    /**
+     * Propagates the raw counts of a single hierarchy.
+     */
+    private static final class Hierarchy extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final FrequencyPropagation hierarchy;
+        private final OffsetCounts raw;
+
+        Hierarchy(FrequencyPropagation hierarchy, OffsetCounts raw) {
+            this.hierarchy = hierarchy;
+            this.raw = raw;
+        }
+
+        @Override
+        protected void compute() {
+            hierarchy.propagate(raw);
+        }
+    }
+
+    /**
+     * Sums the hyponyms of some of the synsets in a level.
+     */
+    private final class Level extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] order;
+        private final int from;
+        private final int to;
+
+        Level(int[] order, int from, int to) {
+            this.order = order;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Level(order, from, middle), new Level(order, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                sum(order[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package englishcoffeedrinker.wordnet.util;
+
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Builds the snapshot of the noun and verb hypernym hierarchies used by the information content measures and by
+ * {@link ICCounter} to avoid walking the hierarchies through the dictionary.
+ * The graph only needs to be built once for each version of WordNet.
+ *
+ * Usage: <code>HypernymGraphBuilder wordnet.xml output</code>
+ */
+public class HypernymGraphBuilder {
+    public static void main(String[] args) throws IOException, JWNLException {
+        if (args.length != 2) {
+            System.err.println("Usage: HypernymGraphBuilder wordnet.xml output");
+            System.exit(1);
+        }
+
+        Dictionary dict = Dictionary.getInstance(new FileInputStream(args[0]));
+
+        HypernymGraph.build(dict).write(new File(args[1]));
+    }
+}
@@ -0,0 +1,173 @@
+package englishcoffeedrinker.wordnet.util;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+
+/**
+ * Counts a corpus of plain text files to produce an information content file. The files are shared out between a
+ * thread for each available processor, each with its own {@link ICCounter}, and the counts are merged once every
+ * file has been counted, so the corpus should be split into at least as many files as there are processors.
+ *
+ * Inputs ending in <code>.counts</code> are partial count files, which are merged rather than counted. If the output
+ * also ends in <code>.counts</code> the merged counts are written as a partial count file instead of being
+ * propagated, so a corpus can be counted in shards across several machines and the shards combined afterwards.
+ *
+ * The <code>-binary</code> option also writes the information content in the binary format, straight from the
+ * counts, so it doesn't have to be converted with {@link InfoContentConverter} afterwards. The
+ * <code>-aggregate</code> option only looks up each distinct word once, after every file has been counted, see
+ * {@link ICCounter#setAggregateWords(boolean)}.
+ *
+ * Usage: <code>ICCorpusCounter [-binary ic.bin] [-aggregate] wordnet.xml resnik|plain output input...</code>
+ */
+public class ICCorpusCounter {
+    private static final String COUNTS_EXTENSION = ".counts";
+
+    /**
+     * Counts a text file. Sentences end at a full stop and words are separated by white space, with any punctuation
+     * at the start or end of a word removed.
+     */
+    static void countText(ICCounter counter, Reader text) throws IOException, JWNLException {
+        BufferedReader in = new BufferedReader(text);
+
+        String line;
+        while ((line = in.readLine()) != null) {
+            for (String sentence : line.split("\\.")) {
+                List<String> sentenceWords = new LinkedList<String>();
+
+                for (String word : sentence.split("\\s")) {
+                    word = word.replaceAll("\\W$|^\\W", "");
+
+                    // Don't bother with words that originally only had punctuation in them
+                    if (!word.isEmpty()) sentenceWords.add(word);
+                }
+
+                counter.countSentence(sentenceWords);
+            }
+        }
+    }
+
+    /**
+     * Counts the text files in parallel and merges the partial count files.
+     *
+     * @param template A counter to copy the settings of each thread's counter from
+     * @param inputs The text files and partial count files
+     * @return A counter holding the merged counts of every input
+     */
+    public static ICCounter count(ICCounter template, List<File> inputs) throws IOException, JWNLException {
+        final ICCounter total = new ICCounter(template);
+
+        final Queue<File> texts = new ConcurrentLinkedQueue<File>();
+        for (File input : inputs) {
+            if (input.getName().endsWith(COUNTS_EXTENSION)) {
+                total.mergeCounts(input);
+            } else {
+                texts.add(input);
+            }
+        }
+
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(), texts.size());
+        if (threads == 0) return total;
+
+        List<Callable<ICCounter>> tasks = new ArrayList<Callable<ICCounter>>(threads);
+        for (int i = 0; i < threads; i++) {
+            final ICCounter counter = new ICCounter(template);
+
+            tasks.add(new Callable<ICCounter>() {
+                @Override
+                public ICCounter call() throws Exception {
+                    File file;
+                    while ((file = texts.poll()) != null) {
+                        Reader text = new InputStreamReader(new FileInputStream(file), "UTF-8");
+                        try {
+                            countText(counter, text);
+                        } finally {
+                            text.close();
+                        }
+                    }
+                    return counter;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<ICCounter> result : executor.invokeAll(tasks)) {
+                total.merge(result.get());
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while counting the corpus");
+        } catch (ExecutionException e) {
+            // Rethrow the exception from the thread that failed.
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof JWNLException) throw (JWNLException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return total;
+    }
+
+    public static void main(String[] args) throws IOException, JWNLException {
+        File binary = null;
+        boolean aggregate = false;
+
+        while (args.length > 0 && args[0].startsWith("-")) {
+            if (args[0].equals("-binary") && args.length >= 2) {
+                binary = new File(args[1]);
+                args = Arrays.copyOfRange(args, 2, args.length);
+            } else if (args[0].equals("-aggregate")) {
+                aggregate = true;
+                args = Arrays.copyOfRange(args, 1, args.length);
+            } else {
+                break;
+            }
+        }
+
+        if (args.length < 4 || !(args[1].equals("resnik") || args[1].equals("plain"))) {
+            System.err.println("Usage: ICCorpusCounter [-binary ic.bin] [-aggregate] wordnet.xml resnik|plain output input...");
+            System.exit(1);
+        }
+
+        Dictionary dict = Dictionary.getInstance(new FileInputStream(args[0]));
+
+        List<File> inputs = new ArrayList<File>();
+        for (int i = 3; i < args.length; i++) {
+            inputs.add(new File(args[i]));
+        }
+
+        ICCounter template = new ICCounter(dict, args[1].equals("resnik"));
+        template.setAggregateWords(aggregate);
+
+        ICCounter counter = count(template, inputs);
+
+        File output = new File(args[2]);
+        if (output.getName().endsWith(COUNTS_EXTENSION)) {
+            counter.writeCounts(output);
+
+            if (binary != null) {
+                counter.propagateFrequency();
+                counter.getInformationContent().write(binary);
+            }
+        } else {
+            counter.propagateFrequency();
+
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(output), "UTF-8"));
+            try {
+                counter.export(out);
+            } finally {
+                out.close();
+            }
+
+            if (binary != null) counter.getInformationContent().write(binary);
+        }
+    }
+}
@@ -1,61 +1,154 @@
 package englishcoffeedrinker.wordnet.util;
 
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import englishcoffeedrinker.wordnet.similarity.InformationContent;
 import net.sf.extjwnl.JWNLException;
 import net.sf.extjwnl.data.*;
-import net.sf.extjwnl.data.list.PointerTargetNode;
-import net.sf.extjwnl.data.list.PointerTargetNodeList;
 import net.sf.extjwnl.data.list.PointerTargetTree;
 import net.sf.extjwnl.dictionary.Dictionary;
 import net.sf.extjwnl.dictionary.file.DictionaryCatalog;
 
-import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.*;
 import java.net.URL;
 import java.util.*;
 
 /**
  * Utility class to count terms in order to produce the information content file.
  *
+ * A counter must only be used by one thread at a time. To count in parallel give each thread or shard its own counter,
+ * created from a template with {@link #ICCounter(ICCounter)}, and {@link #merge(ICCounter)} them once they are done.
+ * Counts from other processes or machines can be passed around as partial count files written by
+ * {@link #writeCounts(OutputStream)}.
+ *
  * Created by Dominic Rout on 13/10/15.
  */
 public class ICCounter {
+    /**
+     * The first four bytes of a partial count file, "WNCC".
+     */
+    private static final int COUNTS_MAGIC = 0x574E4343;
+
+    private static final int COUNTS_VERSION = 1;
+
     private static String[] POS_TAGS = {"n", "v"};
-    private static int MAX_COMPOUND_WORDS = 3;
+    private static final int DEFAULT_MAX_COMPOUND_WORDS = 3;
+
+    /**
+     * The number of characters of an exported file which are built up before being written.
+     */
+    private static final int EXPORT_BUFFER_SIZE = 8192;
+
     private final Dictionary dictionary;
+    private final HypernymGraph graph;
+
+    /**
+     * The graph built from the dictionary when one isn't supplied, or null if it hasn't been needed yet.
+     */
+    private HypernymGraph builtGraph;
 
     private boolean resnik;
-    private HashSet<String> compoundTerms;
-    private TreeMap<String, HashMap<Long, Float>> offsetFreqMap; // Maps from a synset offset to a frequency score
+    private int maxCompoundWords = DEFAULT_MAX_COMPOUND_WORDS;
+    private CompoundTrie compounds;
+    private TreeMap<String, OffsetCounts> offsetFreqMap; // Maps from a synset offset to a frequency score
+
+    /**
+     * The propagated counts of each POS tag, in the order of POS_TAGS, or null if they haven't been propagated.
+     */
+    private FrequencyPropagation[] propagated;
+
+    /**
+     * The synsets whose raw counts have changed since they were propagated, or null if they haven't been.
+     */
+    private TreeMap<String, OffsetCounts> changedFreqMap;
+
+    private final TermNormaliser normaliser = new TermNormaliser();
+
+    /**
+     * The occurrences of each word not yet looked up, or null if words are looked up as they are counted.
+     */
+    private HashMap<String, int[]> wordCounts;
 
     /**
      *
      * @param resnik Use the counting method of resnik et al in which IC is divided amongst all senses
      */
     public ICCounter(Dictionary dictionary, boolean resnik) throws JWNLException, IOException {
+        this(dictionary, resnik, null);
+    }
+
+    /**
+     *
+     * @param resnik Use the counting method of resnik et al in which IC is divided amongst all senses
+     * @param graph A snapshot of the hypernym hierarchies used to propagate and export the frequencies, or null to
+     *              build one from the dictionary when the frequencies are propagated
+     */
+    public ICCounter(Dictionary dictionary, boolean resnik, HypernymGraph graph) throws JWNLException, IOException {
         this.resnik = resnik;
         this.dictionary = dictionary;
+        this.graph = graph;
 
-        offsetFreqMap = new TreeMap<String, HashMap<Long, Float>>();
+        offsetFreqMap = new TreeMap<String, OffsetCounts>();
 
         for (String pos_tag : POS_TAGS) {
-            offsetFreqMap.put(pos_tag, new HashMap<Long, Float>());
+            offsetFreqMap.put(pos_tag, new OffsetCounts());
         }
 
         loadCompounds();
     }
 
+    /**
+     * Creates an empty counter with the same dictionary, settings and compounds as another, so that a counter can be
+     * created for each thread without loading the compounds again. The counts can be combined with
+     * {@link #merge(ICCounter)}.
+     *
+     * @param template The counter to copy the settings from
+     */
+    public ICCounter(ICCounter template) {
+        this.resnik = template.resnik;
+        this.dictionary = template.dictionary;
+        this.graph = template.graph;
+        this.compounds = template.compounds;
+        this.maxCompoundWords = template.maxCompoundWords;
+        if (template.wordCounts != null) this.wordCounts = new HashMap<String, int[]>();
+
+        initFrequencies();
+    }
+
+    /**
+     * Adds the counts of another counter to this one. Counters should be merged before the frequencies are
+     * propagated.
+     *
+     * @param other The counter whose counts are added, which is left unchanged
+     */
+    public void merge(ICCounter other) throws JWNLException {
+        if (other.wordCounts != null) {
+            for (Map.Entry<String, int[]> wordCount : other.wordCounts.entrySet()) {
+                if (wordCounts == null) {
+                    countWord(wordCount.getKey(), wordCount.getValue()[0]);
+                    continue;
+                }
+
+                // Keep aggregating, so words counted by several counters are still only looked up once.
+                int[] count = wordCounts.get(wordCount.getKey());
+                if (count == null) {
+                    wordCounts.put(wordCount.getKey(), new int[]{wordCount.getValue()[0]});
+                } else {
+                    count[0] += wordCount.getValue()[0];
+                }
+            }
+        }
+
+        for (Map.Entry<String, OffsetCounts> posFreqMapEntry : other.offsetFreqMap.entrySet()) {
+            offsetFreqMap.get(posFreqMapEntry.getKey()).addAll(posFreqMapEntry.getValue());
+            if (changedFreqMap != null) changedFreqMap.get(posFreqMapEntry.getKey()).addAll(posFreqMapEntry.getValue());
+        }
+    }
+
     public void countSentence(List<String> sentence) throws JWNLException {
         // Remove unwanted characters
-        LinkedList<String> cleanSentence = new LinkedList<String>();
+        List<String> cleanSentence = new ArrayList<String>(sentence.size());
         for (String term : sentence) {
-            String cleanTerm = term;
-
-            cleanTerm = cleanTerm.toLowerCase();
-            cleanTerm = cleanTerm.replaceAll("'", "");
-            cleanTerm = cleanTerm.replaceAll("[^a-z0-9]", " ");
-            cleanTerm = cleanTerm.trim();
-
-            cleanSentence.addAll(Arrays.asList(cleanTerm.split("\\s")));
+            normaliser.normalise(term, cleanSentence);
         }
 
         List<String> compoundSentence = compoundify(cleanSentence);
@@ -73,126 +166,262 @@ public class ICCounter {
      * @throws JWNLException If senses could not be fetched from the WordNet database.
      */
     public void countWord(String word) throws JWNLException {
+        if (wordCounts != null) {
+            // Only count the occurrences now, the word is looked up when the counts are flushed.
+            int[] count = wordCounts.get(word);
+            if (count == null) {
+                count = new int[1];
+                wordCounts.put(word, count);
+            }
+            count[0]++;
+            return;
+        }
+
+        countWord(word, 1);
+    }
+
+    /**
+     * Resolves synsets for the word and adds a number of occurrences to the hashmap for each.
+     */
+    private void countWord(String word, int occurrences) throws JWNLException {
         for (String posString : POS_TAGS) {
             POS pos = POS.getPOSForKey(posString);
 
-            // Get the hashmap for this POS tag.
-            HashMap<Long, Float> offsetMap = offsetFreqMap.get(posString);
-
             // Find synsets for the word from the dictionary.
             IndexWord indexWord = dictionary.getIndexWord(pos, word);
 
             if (indexWord != null) {
                 long[] offsets = indexWord.getSynsetOffsets();
 
+                // Spread the value over all senses by dividing by the number of senses.
+                float amount = (resnik ? 1.0f / offsets.length : 1.0f);
+
                 for (long offset : offsets) {
-                    // Initialise the offset to zero in the map if needed because Java is ridiculous.
-                    if (!offsetMap.containsKey(offset)) {
-                        offsetMap.put(offset, 0f);
-                    }
-
-                    if (resnik) {
-                        // Spread the value over all senses by dividing by the number of senses.
-                        offsetMap.put(offset, offsetMap.get(offset) + (1.0f / offsets.length));
-                    } else {
-                        offsetMap.put(offset, offsetMap.get(offset) + 1.0f);
-                    }
+                    add(posString, offset, amount, occurrences);
                 }
             }
         }
     }
 
     /**
-     * Propagates the frequencies up through WordNet.
+     * Adds to the raw count of a synset, noting the change if the counts have already been propagated.
+     */
+    private void add(String posString, long offset, float amount) {
+        offsetFreqMap.get(posString).add(offset, amount);
+        if (changedFreqMap != null) changedFreqMap.get(posString).add(offset, amount);
+    }
+
+    /**
+     * Adds the amount of each occurrence of a word to the raw count of a synset, one occurrence at a time.
+     */
+    private void add(String posString, long offset, float amount, int occurrences) {
+        offsetFreqMap.get(posString).add(offset, amount, occurrences);
+        if (changedFreqMap != null) changedFreqMap.get(posString).add(offset, amount, occurrences);
+    }
+
+    /**
+     * Sets whether words are looked up in the dictionary as they are counted, or only once for each distinct word
+     * when the counts are flushed. As the same words occur over and over again in a corpus, aggregating the words
+     * greatly reduces the number of lookups, at the cost of holding every distinct word until the counts are
+     * flushed. Turning aggregation off flushes any aggregated words.
      *
+     * The occurrences of a word are still added to its senses one at a time, so a sense of only one of the counted
+     * words gets exactly the count it would without aggregation. A sense shared by several words can differ in its
+     * last bits, as the occurrences of each word are added together rather than in the order they were counted, so
+     * aggregation is off by default.
      */
-    public void propagateFrequency() throws JWNLException {
-        for (String posString : POS_TAGS) {
-            POS pos = POS.getPOSForKey(posString);
+    public void setAggregateWords(boolean aggregateWords) throws JWNLException {
+        if (aggregateWords) {
+            if (wordCounts == null) wordCounts = new HashMap<String, int[]>();
+        } else {
+            flushWords();
+            wordCounts = null;
+        }
+    }
 
-            HashMap<Long, Float> offsetMap = offsetFreqMap.get(posString);
-            // This will hold the intermediate result to prevent summing twice.
-            HashMap<Long, Float> resultOffsetMap = new HashMap<Long, Float>(offsetFreqMap.get(posString));
+    public boolean isAggregateWords() {
+        return wordCounts != null;
+    }
 
-            // First, set the root offsets to 0.
-            if (!resultOffsetMap.containsKey(0l)) { resultOffsetMap.put(0l, 0.0f); }
+    /**
+     * Looks up each of the aggregated words and adds their occurrences to the counts. This happens automatically
+     * before the counts are written, propagated or exported, but can be called sooner to free the memory used by the
+     * words.
+     *
+     * @throws JWNLException If senses could not be fetched from the WordNet database.
+     */
+    public void flushWords() throws JWNLException {
+        if (wordCounts == null || wordCounts.isEmpty()) return;
 
-            // Get the sum of hyponyms for each term in the dictionary.
-            Iterator synsetIterator = dictionary.getSynsetIterator(pos);
+        for (Map.Entry<String, int[]> wordCount : wordCounts.entrySet()) {
+            countWord(wordCount.getKey(), wordCount.getValue()[0]);
+        }
 
-            while (synsetIterator.hasNext()) {
-                // Get the actual index term.
-                Synset synset = (Synset) synsetIterator.next();
+        wordCounts.clear();
+    }
+
+    /**
+     * Writes the counts so far to a partial count file, which can be merged into another counter with
+     * {@link #mergeCounts(InputStream)}. Counts should be written before the frequencies are propagated.
+     *
+     * @param out The stream to write to, which is left open
+     */
+    public void writeCounts(OutputStream out) throws IOException, JWNLException {
+        flushWords();
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(COUNTS_MAGIC);
+        data.writeInt(COUNTS_VERSION);
+        data.writeUTF(String.valueOf(dictionary.getVersion().getNumber()));
+        data.writeBoolean(resnik);
 
-                // Only start with root nodes.
-                if (PointerUtils.getDirectHypernyms(synset).isEmpty()) {
-                    float frequency = _propagateFrequency(synset, offsetMap, resultOffsetMap);
-                    resultOffsetMap.put(0l, resultOffsetMap.get(0l) + frequency);
+        data.writeInt(offsetFreqMap.size());
+        for (Map.Entry<String, OffsetCounts> posFreqMapEntry : offsetFreqMap.entrySet()) {
+            OffsetCounts offsetMap = posFreqMapEntry.getValue();
+
+            data.writeUTF(posFreqMapEntry.getKey());
+            data.writeInt(offsetMap.size());
+
+            for (int slot = 0; slot < offsetMap.slots(); slot++) {
+                if (offsetMap.isUsed(slot)) {
+                    data.writeLong(offsetMap.offsetAt(slot));
+                    data.writeFloat(offsetMap.countAt(slot));
                 }
             }
+        }
 
-            offsetFreqMap.put(posString, resultOffsetMap);
+        data.flush();
+    }
+
+    /**
+     * Writes the counts so far to a partial count file.
+     *
+     * @see #writeCounts(OutputStream)
+     */
+    public void writeCounts(File file) throws IOException, JWNLException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            writeCounts(out);
+        } finally {
+            out.close();
         }
     }
 
-    public void smoothFrequency() throws JWNLException {
-        for (String posString : POS_TAGS) {
-            POS pos = POS.getPOSForKey(posString);
+    /**
+     * Adds the counts from a partial count file to this counter.
+     *
+     * @param in The stream to read from, which is left open
+     * @throws IOException If the counts couldn't be read, or were counted with a different version of WordNet or
+     *                     counting method
+     */
+    public void mergeCounts(InputStream in) throws IOException, JWNLException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
 
-            HashMap<Long, Float> offsetMap = offsetFreqMap.get(posString);
+        if (data.readInt() != COUNTS_MAGIC) throw new IOException("Not a partial count file");
+        if (data.readInt() != COUNTS_VERSION) throw new IOException("Unsupported partial count file version");
 
-            // Iterate over every sense in the dictionary.
-            Iterator synsetIterator = dictionary.getSynsetIterator(pos);
+        if (!data.readUTF().equals(String.valueOf(dictionary.getVersion().getNumber()))) {
+            throw new IOException("Partial count file version doesn't match WordNet version");
+        }
+        if (data.readBoolean() != resnik) {
+            throw new IOException("Partial count file was counted with a different counting method");
+        }
 
-            while (synsetIterator.hasNext()) {
-                // Get the actual index term.
-                Synset synset = (Synset) synsetIterator.next();
+        int posCount = data.readInt();
+        for (int i = 0; i < posCount; i++) {
+            String posString = data.readUTF();
+            if (!offsetFreqMap.containsKey(posString)) throw new IOException("Partial count file contains an unexpected POS tag");
 
-                long offset = synset.getOffset();
+            int size = data.readInt();
+            for (int j = 0; j < size; j++) {
+                long offset = data.readLong();
+                if (offset < 0) throw new IOException("Partial count file contains a negative offset");
 
-                offsetMap.put(offset, (offsetMap.containsKey(offset) ? offsetMap.get(offset) : 0l) + 1l);
+                add(posString, offset, data.readFloat());
             }
         }
+    }
 
+    /**
+     * Adds the counts from a partial count file to this counter.
+     *
+     * @see #mergeCounts(InputStream)
+     */
+    public void mergeCounts(File file) throws IOException, JWNLException {
+        InputStream in = new FileInputStream(file);
+        try {
+            mergeCounts(in);
+        } finally {
+            in.close();
+        }
     }
 
     /**
-     * Actually propagates the frequency up to a subtree root. Works recursively down through the tree.
+     * Propagates the frequencies up through WordNet. The hierarchies are taken from the hypernym graph, which is
+     * built from the dictionary if one wasn't supplied, and are summed level by level rather than recursively, with
+     * the nouns and verbs in parallel.
+     *
+     * The raw counts are kept, so more can be counted or merged afterwards. Propagating again then only sums the
+     * synsets above those whose counts changed, so adding a new corpus to the counts of an old one, loaded with
+     * {@link #mergeCounts(InputStream)}, costs little more than counting the new corpus.
      *
-     * @param synset
-     * @param offsetMap
-     * @param currentMap
-     * @return
-     * @throws JWNLException
      */
-    private float _propagateFrequency(Synset synset, HashMap<Long, Float> offsetMap, HashMap<Long, Float> currentMap) throws JWNLException {
-        PointerTargetNodeList hyponyms = PointerUtils.getDirectHyponyms(synset);
+    public void propagateFrequency() throws JWNLException {
+        flushWords();
 
-        long offset = synset.getOffset();
-        // Return the current value if we've already encountered this node.
-        if (currentMap.containsKey(synset.getOffset())) {
-            return currentMap.get(offset);
-        }
+        if (propagated == null) {
+            POS[] pos = new POS[POS_TAGS.length];
+            OffsetCounts[] counts = new OffsetCounts[POS_TAGS.length];
 
-        // Return the value from the text if the node has no hyponyms.
-        if (hyponyms.isEmpty()) {
-            float value = offsetMap.containsKey(offset) ? offsetMap.get(offset) : 0;
+            for (int i = 0; i < POS_TAGS.length; i++) {
+                pos[i] = POS.getPOSForKey(POS_TAGS[i]);
+                counts[i] = offsetFreqMap.get(POS_TAGS[i]);
+            }
 
-            currentMap.put(offset, value);
-            return value;
+            propagated = FrequencyPropagation.propagate(getGraph(), pos, counts);
+        } else {
+            for (int i = 0; i < POS_TAGS.length; i++) {
+                propagated[i].update(offsetFreqMap.get(POS_TAGS[i]), changedFreqMap.get(POS_TAGS[i]));
+            }
         }
 
-        float sum = 0;
-        // Sum the values for each hyponym.
-        for (Object hyponymObject : hyponyms) {
-            PointerTargetNode hyponymNode = (PointerTargetNode) hyponymObject;
-            sum += _propagateFrequency(hyponymNode.getSynset(), offsetMap, currentMap);
+        // Note any further changes, so the next propagation only has to update them.
+        changedFreqMap = new TreeMap<String, OffsetCounts>();
+        for (String posString : POS_TAGS) {
+            changedFreqMap.put(posString, new OffsetCounts());
+        }
+    }
+
+    /**
+     * Get the hypernym graph, building it from the dictionary the first time if one wasn't supplied.
+     */
+    private HypernymGraph getGraph() throws JWNLException {
+        if (graph != null) return graph;
+
+        if (builtGraph == null) builtGraph = HypernymGraph.build(dictionary);
+        return builtGraph;
+    }
+
+    public void smoothFrequency() throws JWNLException {
+        flushWords();
+
+        for (String posString : POS_TAGS) {
+            POS pos = POS.getPOSForKey(posString);
+
+            // Iterate over every sense in the dictionary.
+            Iterator synsetIterator = dictionary.getSynsetIterator(pos);
+
+            while (synsetIterator.hasNext()) {
+                // Get the actual index term.
+                Synset synset = (Synset) synsetIterator.next();
+
+                long offset = synset.getOffset();
+
+                add(posString, offset, 1.0f);
+            }
         }
 
-        // Add the sum to the count from the text if available.
-        sum += offsetMap.containsKey(offset) ? offsetMap.get(offset) : 0;
-        currentMap.put(offset, sum);
-        return sum;
     }
 
     /**
@@ -200,7 +429,7 @@ public class ICCounter {
      */
     protected void loadCompounds() throws JWNLException {
 
-        compoundTerms = new HashSet<String>();
+        compounds = new CompoundTrie();
 
         for (String pos_tag : POS_TAGS) {
             // Find words for the pos tag.
@@ -211,7 +440,7 @@ public class ICCounter {
 
                 // If the term is compound it will contain a ' ' character.
                 if (term.getLemma().contains(" ")) {
-                    compoundTerms.add(term.getLemma());
+                    compounds.add(term.getLemma());
                 }
                 // WordNet::similarity uses _ here so check and see if we should also be using that.
                 if (term.getLemma().contains("_")) {
@@ -225,72 +454,178 @@ public class ICCounter {
      * Create the structures to hold the offset frequencies.
      */
     protected void initFrequencies() {
-        offsetFreqMap = new TreeMap<String, HashMap<Long, Float>>();
+        offsetFreqMap = new TreeMap<String, OffsetCounts>();
 
         for (String pos : POS_TAGS) {
-            offsetFreqMap.put(pos, new HashMap<Long, Float>());
+            offsetFreqMap.put(pos, new OffsetCounts());
         }
     }
 
     /**
-     * Finds compound terms from WordNet in the sentence and returns a version with them added..
+     * Finds compound terms from WordNet in the sentence and returns a version with each replaced by a single word.
+     * At each word the longest compound starting there is used.
      * @param sentence
      * @return
      */
     protected List<String> compoundify(List<String> sentence) {
-        List<String> result = new LinkedList<String>(sentence);
-
-        // Use a left and right pointer to select subsets of the tokens and compare to the compounds.
-        for (int left_ptr = 0; left_ptr < sentence.size(); left_ptr++) {
-            // Move the right pointer to up to MAX_COMPOUND_WORDS away, or the end of the sentence.
-            String candidateString = sentence.get(left_ptr);
-
-            for (int right_ptr = left_ptr + 1; // Not interested in length 1
-                 right_ptr < left_ptr + MAX_COMPOUND_WORDS && right_ptr < sentence.size();
-                    right_ptr ++) {
-                // Build a candidate compound to check
-                candidateString += " " + sentence.get(right_ptr);
-
-                // See if the compound exists in WordNet
-                if (compoundTerms.contains(candidateString)) {
-                    // And add it to the result if so.
-                    List<String> tmp = result.subList(0, left_ptr);
-                    tmp.add(candidateString);
-                    tmp.addAll(result.subList(right_ptr+2, result.size()));
-
-                    result = tmp;
-                }
-            }
-        }
-        return result;
+        return compounds.compoundify(sentence, maxCompoundWords);
+    }
+
+    /**
+     * Get the number of words in the longest compound which is looked for.
+     */
+    public int getMaxCompoundWords() {
+        return maxCompoundWords;
+    }
+
+    /**
+     * Sets the number of words in the longest compound which is looked for, 3 by default.
+     */
+    public void setMaxCompoundWords(int maxCompoundWords) {
+        if (maxCompoundWords < 1) throw new IllegalArgumentException("Compounds must have at least one word");
+        this.maxCompoundWords = maxCompoundWords;
     }
 
     /**
-     * Prints the IC counts to the supplied data file in the format required for the library.
+     * Prints the IC counts to the supplied data file in the format required for the library. Once the counts have
+     * been propagated the propagated counts are printed, updated with any counts added since, otherwise the raw
+     * counts are printed.
+     *
+     * The synsets of each POS tag are printed in offset order. Whether a synset is a root is taken from the
+     * hierarchies used to propagate the counts, so the dictionary is only read for synsets of raw counts which
+     * haven't been propagated, and the lines are built in a buffer rather than formatted one by one.
      * @param output
      */
     public void export(PrintWriter output) throws JWNLException {
+        TreeMap<String, OffsetCounts> exportMap = getExportCounts();
+
+        StringBuilder buffer = new StringBuilder(EXPORT_BUFFER_SIZE + 64);
+        char[] chars = new char[EXPORT_BUFFER_SIZE + 64];
+
         // Print a current version number
-        output.format("wnver::%.1f\n", dictionary.getVersion().getNumber());
+        buffer.append("wnver::").append(getVersion()).append('\n');
 
         // Output one POS tag at a time
-        for (Map.Entry<String, HashMap<Long, Float>> posFreqMapEntry : offsetFreqMap.entrySet()) {
-            String posTag = posFreqMapEntry.getKey();
+        for (int i = 0; i < POS_TAGS.length; i++) {
+            String posTag = POS_TAGS[i];
             POS pos = POS.getPOSForKey(posTag);
+            OffsetCounts offsetMap = exportMap.get(posTag);
+
+            for (long offset : offsetMap.sortedOffsets()) {
+                if (offset == 0) continue; // Global roots are fictitious and don't get output.
+
+                buffer.append(offset).append(posTag).append(' ');
+                appendFrequency(buffer, offsetMap.get(offset));
+                buffer.append(' ');
+                if (isRoot(i, pos, offset)) buffer.append("ROOT");
+                buffer.append('\n');
+
+                if (buffer.length() >= EXPORT_BUFFER_SIZE) {
+                    if (buffer.length() > chars.length) chars = new char[buffer.length()];
+                    buffer.getChars(0, buffer.length(), chars, 0);
+                    output.write(chars, 0, buffer.length());
+                    buffer.setLength(0);
+                }
+            }
+        }
 
-            // Iterate through all of the words in this dictionary.
-            for (Map.Entry<Long, Float> wordFreqEntry : posFreqMapEntry.getValue().entrySet()) {
-                long offset = wordFreqEntry.getKey();
-                if (offset != 0) { // Global roots are fictitious and don't get output.
-                    Synset synset = dictionary.getSynsetAt(pos, offset);
-
-                    output.format("%d%s %f %s\n",
-                            offset,
-                            posTag,
-                            wordFreqEntry.getValue(),
-                            PointerUtils.getDirectHypernyms(synset).isEmpty() ? "ROOT" : "");
+        output.write(buffer.toString());
+    }
+
+    /**
+     * Get the counts as an information content instance, which can be used straight away or written in the binary
+     * format with {@link InformationContent#write(File)}. It holds the same synsets as {@link #export(PrintWriter)}
+     * prints, but with the full precision of each count rather than the six decimal places of the text format.
+     */
+    public InformationContent getInformationContent() throws JWNLException {
+        TreeMap<String, OffsetCounts> exportMap = getExportCounts();
+
+        InformationContent.Builder builder = new InformationContent.Builder(getVersion());
+
+        for (int i = 0; i < POS_TAGS.length; i++) {
+            POS pos = POS.getPOSForKey(POS_TAGS[i]);
+            OffsetCounts offsetMap = exportMap.get(POS_TAGS[i]);
+
+            for (long offset : offsetMap.sortedOffsets()) {
+                if (offset == 0) continue; // Global roots are fictitious and aren't stored.
+
+                builder.add(pos, offset, offsetMap.get(offset), isRoot(i, pos, offset));
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Get the counts to export, bringing the propagated counts up to date if they have been propagated.
+     */
+    private TreeMap<String, OffsetCounts> getExportCounts() throws JWNLException {
+        flushWords();
+
+        if (propagated == null) return offsetFreqMap;
+
+        propagateFrequency();
+
+        TreeMap<String, OffsetCounts> exportMap = new TreeMap<String, OffsetCounts>();
+        for (int i = 0; i < POS_TAGS.length; i++) {
+            exportMap.put(POS_TAGS[i], propagated[i].getCounts(offsetFreqMap.get(POS_TAGS[i])));
+        }
+        return exportMap;
+    }
+
+    /**
+     * Get the WordNet version, as written at the top of an information content file.
+     */
+    private String getVersion() {
+        return String.format(Locale.ROOT, "%.1f", dictionary.getVersion().getNumber());
+    }
+
+    /**
+     * Appends a frequency with six decimal places, exactly as <code>%f</code> would format it but without parsing a
+     * format string for every line. Frequencies below a million are rounded with integer arithmetic unless they fall
+     * too close to half way between two results, and everything else is left to the formatter.
+     */
+    static void appendFrequency(StringBuilder buffer, double frequency) {
+        // Checking the sign bit leaves negative zero, as well as NaN, to the formatter.
+        if (Double.doubleToRawLongBits(frequency) >= 0 && frequency < 1e6) {
+            double scaled = frequency * 1e6;
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+
+            // The error in scaling is far smaller than this, so the rounding can't go the wrong way.
+            if (Math.abs(fraction - 0.5) > 0.01) {
+                long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+                long decimals = units % 1000000;
+
+                buffer.append(units / 1000000).append('.');
+                for (long digit = 100000; digit > decimals && digit > 1; digit /= 10) {
+                    buffer.append('0');
                 }
+                buffer.append(decimals);
+                return;
             }
+        } else if (frequency >= 1e6 && frequency < 1e15 && frequency == Math.rint(frequency)) {
+            buffer.append((long) frequency).append(".000000");
+            return;
+        }
+
+        buffer.append(String.format(Locale.ROOT, "%f", frequency));
+    }
+
+    /**
+     * Checks if a synset is the root of a hierarchy, i.e. it has no hypernyms.
+     */
+    private boolean isRoot(int posIndex, POS pos, long offset) throws JWNLException {
+        // The roots were found when the counts were propagated.
+        if (propagated != null) return propagated[posIndex].isRoot(offset);
+
+        HypernymGraph hierarchy = (graph != null ? graph : builtGraph);
+
+        if (hierarchy != null) {
+            int ordinal = hierarchy.getOrdinal(pos, offset);
+            if (ordinal != -1) return hierarchy.getHypernymCount(pos, ordinal) == 0;
         }
+
+        return PointerUtils.getDirectHypernyms(dictionary.getSynsetAt(pos, offset)).isEmpty();
     }
 }
@@ -0,0 +1,38 @@
+package englishcoffeedrinker.wordnet.util;
+
+import englishcoffeedrinker.wordnet.similarity.InformationContent;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * Converts an information content file in the text (<code>wnver::</code>) format into the binary format which can be
+ * memory mapped by {@link InformationContent}.
+ *
+ * Usage: <code>InfoContentConverter input output [encoding]</code> where the input can be a file name or a URL.
+ */
+public class InfoContentConverter {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: InfoContentConverter input output [encoding]");
+            System.exit(1);
+        }
+
+        InformationContent infoContent = InformationContent.load(toURL(args[0]), args.length == 3 ? args[2] : null);
+
+        infoContent.write(new File(args[1]));
+    }
+
+    /**
+     * Interprets an argument as a URL, falling back to treating it as a file name.
+     */
+    static URL toURL(String location) throws MalformedURLException {
+        try {
+            return new URL(location);
+        } catch (MalformedURLException e) {
+            return new File(location).toURI().toURL();
+        }
+    }
+}
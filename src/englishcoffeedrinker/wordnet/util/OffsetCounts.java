@@ -0,0 +1,196 @@
+package englishcoffeedrinker.wordnet.util;
+
+import java.util.Arrays;
+
+/**
+ * A map from synset offsets to counts, held in primitive arrays with open addressing so that counting a word boxes
+ * neither the offset nor the count. Offsets must not be negative.
+ *
+ * The entries are visited by slot:
+ * <pre>
+ * for (int slot = 0; slot &lt; counts.slots(); slot++) {
+ *     if (counts.isUsed(slot)) use(counts.offsetAt(slot), counts.countAt(slot));
+ * }
+ * </pre>
+ */
+class OffsetCounts {
+    /**
+     * Marks a free slot, which can't be confused with an offset as offsets are never negative.
+     */
+    private static final long FREE = -1;
+
+    private long[] offsets;
+    private float[] counts;
+    private int size = 0;
+
+    OffsetCounts() {
+        this(16);
+    }
+
+    /**
+     * @param expected The number of entries the map should hold without growing
+     */
+    OffsetCounts(int expected) {
+        int capacity = 16;
+        while (capacity < expected * 2) capacity <<= 1;
+
+        offsets = new long[capacity];
+        counts = new float[capacity];
+        Arrays.fill(offsets, FREE);
+    }
+
+    /**
+     * Creates a copy of another map.
+     */
+    OffsetCounts(OffsetCounts other) {
+        offsets = other.offsets.clone();
+        counts = other.counts.clone();
+        size = other.size;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the slot holding an offset, or the free slot it would be put in.
+     */
+    private int slot(long offset) {
+        long hash = offset * 0x9E3779B97F4A7C15L;
+        int mask = offsets.length - 1;
+
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (offsets[slot] != offset && offsets[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    boolean containsKey(long offset) {
+        return offsets[slot(offset)] == offset;
+    }
+
+    /**
+     * Get the count of an offset, or 0 if it isn't in the map.
+     */
+    float get(long offset) {
+        int slot = slot(offset);
+        return offsets[slot] == offset ? counts[slot] : 0;
+    }
+
+    void put(long offset, float count) {
+        if (offset < 0) throw new IllegalArgumentException("Offsets can't be negative");
+
+        int slot = slot(offset);
+        if (offsets[slot] == FREE) {
+            offsets[slot] = offset;
+            if (++size * 2 > offsets.length) {
+                counts[slot] = count;
+                grow();
+                return;
+            }
+        }
+        counts[slot] = count;
+    }
+
+    /**
+     * Adds to the count of an offset, which starts at 0 if it isn't in the map.
+     */
+    void add(long offset, float amount) {
+        if (offset < 0) throw new IllegalArgumentException("Offsets can't be negative");
+
+        int slot = slot(offset);
+        if (offsets[slot] == FREE) {
+            offsets[slot] = offset;
+            counts[slot] = amount;
+            if (++size * 2 > offsets.length) grow();
+        } else {
+            counts[slot] += amount;
+        }
+    }
+
+    /**
+     * Adds an amount to the count of an offset a number of times, one addition at a time, so that the count is
+     * exactly what calling {@link #add(long, float)} that many times would give.
+     */
+    void add(long offset, float amount, int times) {
+        if (offset < 0) throw new IllegalArgumentException("Offsets can't be negative");
+        if (times <= 0) return;
+
+        int slot = slot(offset);
+        if (offsets[slot] == FREE) {
+            offsets[slot] = offset;
+            counts[slot] = 0;
+            if (++size * 2 > offsets.length) {
+                grow();
+                slot = slot(offset);
+            }
+        }
+
+        float count = counts[slot];
+        for (int i = 0; i < times; i++) {
+            count += amount;
+        }
+        counts[slot] = count;
+    }
+
+    /**
+     * Adds every count in another map to this one.
+     */
+    void addAll(OffsetCounts other) {
+        for (int slot = 0; slot < other.offsets.length; slot++) {
+            if (other.offsets[slot] != FREE) add(other.offsets[slot], other.counts[slot]);
+        }
+    }
+
+    private void grow() {
+        long[] oldOffsets = offsets;
+        float[] oldCounts = counts;
+
+        offsets = new long[oldOffsets.length * 2];
+        counts = new float[oldCounts.length * 2];
+        Arrays.fill(offsets, FREE);
+
+        for (int i = 0; i < oldOffsets.length; i++) {
+            if (oldOffsets[i] != FREE) {
+                int slot = slot(oldOffsets[i]);
+                offsets[slot] = oldOffsets[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    /**
+     * Get the offsets in the map in ascending order.
+     */
+    long[] sortedOffsets() {
+        long[] sorted = new long[size];
+
+        int n = 0;
+        for (int slot = 0; slot < offsets.length; slot++) {
+            if (offsets[slot] != FREE) sorted[n++] = offsets[slot];
+        }
+
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Get the number of slots, some of which may be free.
+     */
+    int slots() {
+        return offsets.length;
+    }
+
+    boolean isUsed(int slot) {
+        return offsets[slot] != FREE;
+    }
+
+    long offsetAt(int slot) {
+        return offsets[slot];
+    }
+
+    float countAt(int slot) {
+        return counts[slot];
+    }
+}
@@ -0,0 +1,91 @@
+package englishcoffeedrinker.wordnet.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the terms of a sentence into the words {@link ICCounter} counts. A term is lower cased, apostrophes are
+ * removed, anything else which isn't a letter or digit becomes a space, and the result is trimmed and split at every
+ * space. Consecutive spaces give empty words, and a term with no letters or digits gives a single empty word, just as
+ * <code>split("\\s")</code> does.
+ *
+ * Terms are handled in a single pass over their characters into a reused buffer. Terms containing non-ASCII
+ * characters, whose lower case form depends on the locale, are handled with the equivalent regular expressions.
+ * A normaliser must only be used by one thread at a time.
+ */
+class TermNormaliser {
+    /**
+     * False if the default locale lower cases some ASCII letters to something other than their ASCII lower case, as
+     * in Turkish, in which case every term is handled with the regular expressions.
+     */
+    private static final boolean ASCII_LOWER_CASE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toLowerCase().equals("abcdefghijklmnopqrstuvwxyz");
+
+    private char[] buffer = new char[64];
+
+    /**
+     * Adds the words of a term to a list.
+     */
+    void normalise(String term, List<String> words) {
+        int length = term.length();
+
+        if (length > buffer.length) buffer = new char[Math.max(length, buffer.length * 2)];
+
+        // Lower case and replace the characters, leaving out apostrophes.
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = term.charAt(i);
+
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                buffer[size++] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                buffer[size++] = (char) (c + ('a' - 'A'));
+            } else if (c == '\'') {
+                // Removed entirely.
+            } else if (c < 128) {
+                buffer[size++] = ' ';
+            } else {
+                normaliseSlowly(term, words);
+                return;
+            }
+        }
+
+        if (!ASCII_LOWER_CASE) {
+            normaliseSlowly(term, words);
+            return;
+        }
+
+        // Trim the spaces from each end.
+        int start = 0;
+        while (start < size && buffer[start] == ' ') start++;
+        while (size > start && buffer[size - 1] == ' ') size--;
+
+        // Split at every space, keeping the empty words between consecutive spaces.
+        int from = start;
+        for (int i = start; i < size; i++) {
+            if (buffer[i] == ' ') {
+                words.add(word(from, i));
+                from = i + 1;
+            }
+        }
+        words.add(word(from, size));
+    }
+
+    private String word(int from, int to) {
+        return from == to ? "" : new String(buffer, from, to - from);
+    }
+
+    /**
+     * Adds the words of a term using the regular expressions the single pass is equivalent to.
+     */
+    static void normaliseSlowly(String term, List<String> words) {
+        String cleanTerm = term;
+
+        cleanTerm = cleanTerm.toLowerCase();
+        cleanTerm = cleanTerm.replaceAll("'", "");
+        cleanTerm = cleanTerm.replaceAll("[^a-z0-9]", " ");
+        cleanTerm = cleanTerm.trim();
+
+        words.addAll(Arrays.asList(cleanTerm.split("\\s")));
+    }
+}
@@ -1,6 +1,7 @@
 package uk.ac.sheffield.wordnet;
 
 import englishcoffeedrinker.wordnet.similarity.Lin;
+import englishcoffeedrinker.wordnet.similarity.MappedFiles;
 import englishcoffeedrinker.wordnet.similarity.SimilarityInfo;
 import englishcoffeedrinker.wordnet.similarity.SimilarityMeasure;
 import gate.Annotation;
@@ -19,6 +20,7 @@ import net.sf.extjwnl.dictionary.Dictionary;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.util.*;
 
 import static org.junit.Assert.assertEquals;
@@ -34,77 +36,239 @@ import static org.junit.Assert.assertNotNull;
 public class CachedSimilarity extends AbstractLanguageAnalyser implements
         ProcessingResource {
 
-    HashMap<String, HashMap<String, Float>> cache;
-    LinkedList<String> targetWords;
+    /**
+     * The cached scores, a row for each word and a column for each target word. Tables are shared with any other
+     * PRs using the same cache file.
+     */
+    SimilarityTable table;
+
+    /**
+     * Appended to the scores feature name to give the document feature listing the targets, in array output mode.
+     */
+    static final String TARGETS_SUFFIX = "Targets";
+
+    /**
+     * The measure used to compute the scores of words that aren't in the table, or null if they should be 0.
+     */
+    private SimilarityMeasure sim;
+
+    /**
+     * The synsets of each target word, in column order.
+     */
+    private List<Set<Synset>> targetSynsets;
+
+    /**
+     * The scores computed for words that aren't in the table, or null if there is no overflow file and no measure.
+     */
+    private SimilarityOverflow overflow;
 
     @SuppressWarnings("unchecked")
     @Override
     public void execute() throws ExecutionException {
-        if (cache == null) {
+        if (table == null) {
             initCache();
         }
 
+        List<String> targets = table.getTargets();
+
+        if (outputMode == OutputModeEnum.ARRAY) {
+            // The array features are only meaningful alongside the targets they are in the order of.
+            document.getFeatures().put(scoresFeature + TARGETS_SUFFIX, new ArrayList<String>(targets));
+        }
+
+        // Tokens whose words aren't in the table or the overflow, grouped by word so each is only computed once.
+        Map<String, List<Annotation>> misses = new LinkedHashMap<String, List<Annotation>>();
+
         AnnotationSet inputSet = document.getAnnotations(inputAS);
         for (Annotation token : inputSet.get(tokenType)) {
             String tokenText = (String) token.getFeatures().get(textFeature);
 
-            HashMap<String, Float> tokenSims = cache.get(tokenText);
+            int row = (tokenText == null ? -1 : table.getRow(tokenText));
 
             // Only try to calculate similarity for tokens that are in wordnet
-            if (tokenSims != null) {
-                for (String target : targetWords) {
-                    Float score = tokenSims.get(target);
-
-                    if (score == null) {score = 0.0f;};
-                    token.getFeatures().put(target, score);
+            if (row != -1) {
+                if (outputMode == OutputModeEnum.ARRAY) {
+                    token.getFeatures().put(scoresFeature, table.getScores(row));
+                } else {
+                    for (int column = 0; column < targets.size(); column++) {
+                        token.getFeatures().put(targets.get(column), table.getScore(row, column));
+                    }
+                }
+            } else if (tokenText != null && overflow != null && overflow.get(tokenText) != null) {
+                setScores(token, overflow.get(tokenText));
+            } else if (tokenText != null && sim != null) {
+                List<Annotation> tokens = misses.get(tokenText);
+                if (tokens == null) {
+                    tokens = new ArrayList<Annotation>();
+                    misses.put(tokenText, tokens);
                 }
+                tokens.add(token);
+            } else if (outputMode == OutputModeEnum.ARRAY) {
+                // Default to 0 if the word is not in the cache.
+                token.getFeatures().put(scoresFeature, new float[targets.size()]);
             } else {
                 // Default to 0 if the word is not in the cache.
-                for (String target : targetWords) {
+                for (String target : targets) {
                     token.getFeatures().put(target, 0);
                 }
             }
         }
-    }
 
-    private void initCache() throws ExecutionException {
-        cache = new HashMap<String, HashMap<String, Float>>();
+        if (!misses.isEmpty()) computeMisses(misses);
+    }
 
+    /**
+     * Computes the scores of words that aren't in the table, all together so that they are spread across the
+     * available processors, and adds them to the overflow so they won't be computed again.
+     */
+    private void computeMisses(Map<String, List<Annotation>> misses) throws ExecutionException {
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(cacheLocation.openStream()));
+            List<Set<Synset>> wordSynsets = new ArrayList<Set<Synset>>(misses.size());
+            for (String word : misses.keySet()) {
+                wordSynsets.add(sim.getSynsets(word, false));
+            }
 
-            String line;
-            targetWords = new LinkedList<String>();
+            double[][] scores = sim.getSynsetSimilarityMatrix(wordSynsets, targetSynsets);
 
-            if ((line = reader.readLine()) != null) {
-                targetWords.addAll(Arrays.asList(line.split(" ")));
+            int i = 0;
+            for (Map.Entry<String, List<Annotation>> miss : misses.entrySet()) {
+                float[] row = CachedSimilarityGenerator.toFloats(scores[i++]);
 
-                targetWords.removeFirst(); // First two columns aren't target words!
-                targetWords.removeFirst();
-            } else {
-                throw new ExecutionException("Cache file for wordnet similarity was empty.");
+                overflow.add(miss.getKey(), row);
+
+                for (Annotation token : miss.getValue()) {
+                    setScores(token, row);
+                }
             }
+        } catch (JWNLException e) {
+            throw new ExecutionException("Couldn't compute the similarity of words missing from the cache", e);
+        } catch (IOException e) {
+            throw new ExecutionException("Couldn't write to the overflow file", e);
+        }
+    }
+
+    private void setScores(Annotation token, float[] scores) {
+        if (outputMode == OutputModeEnum.ARRAY) {
+            // Copied so a PR changing the feature can't change the stored scores.
+            token.getFeatures().put(scoresFeature, scores.clone());
+            return;
+        }
+
+        List<String> targets = table.getTargets();
+        for (int column = 0; column < targets.size(); column++) {
+            token.getFeatures().put(targets.get(column), scores[column]);
+        }
+    }
+
+    /**
+     * Loads the table, the measure and the overflow, only keeping any of them once all three are ready so that a
+     * failure part way through doesn't leave this PR half initialised.
+     */
+    private void initCache() throws ExecutionException {
+        SimilarityTable newTable;
+        try {
+            // Binary tables are memory mapped, text tables are parsed into a single float matrix.
+            // Only the wanted target columns are kept.
+            List<String> wanted = (targetWords == null || targetWords.isEmpty() ? null : targetWords);
+            newTable = SimilarityTableRegistry.acquire(cacheLocation, Charset.defaultCharset().name(), wanted);
+        } catch (IOException e) {
+            throw new ExecutionException("Error when trying to read the cache file for wordnet similarity", e);
+        }
 
-            while ((line = reader.readLine()) != null) {
-                String[] splitLine = line.split(" ");
+        boolean initialised = false;
+        try {
+            SimilarityMeasure newSim = null;
+            List<Set<Synset>> newTargetSynsets = null;
 
-                String word = splitLine[0];
-                HashMap<String, Float> cacheEntry = new HashMap<String, Float>();
-                cache.put(word, cacheEntry);
+            if (simType != null && wordnetConfig != null) {
+                newTargetSynsets = new ArrayList<Set<Synset>>();
+                newSim = initSimilarityMeasure(newTable.getTargets(), newTargetSynsets);
+            }
 
-                Iterator<String> targetIter = targetWords.iterator();
-                for (int i = 2; i < splitLine.length; i++) {
-                    String target = targetIter.next();
+            SimilarityOverflow newOverflow = null;
+            try {
+                if (overflowLocation != null) {
+                    File file = MappedFiles.toFile(overflowLocation);
+                    if (file == null) throw new ExecutionException("Overflow location must be a local file");
 
-                    cacheEntry.put(target, Float.parseFloat(splitLine[i]));
+                    newOverflow = SimilarityOverflow.acquire(file, newTable.getTargets());
+                } else if (newSim != null) {
+                    newOverflow = SimilarityOverflow.inMemory(newTable.getTargets());
                 }
+            } catch (IOException e) {
+                throw new ExecutionException("Error when trying to read the overflow file for wordnet similarity", e);
+            }
 
+            table = newTable;
+            sim = newSim;
+            targetSynsets = newTargetSynsets;
+            overflow = newOverflow;
+            initialised = true;
+        } finally {
+            if (!initialised) SimilarityTableRegistry.release(newTable);
+        }
+    }
 
+    /**
+     * Creates the measure used to compute missing scores.
+     * @param targets the target words, in column order
+     * @param targetSynsets filled with the synsets of each target word
+     * @return the measure
+     */
+    private SimilarityMeasure initSimilarityMeasure(List<String> targets, List<Set<Synset>> targetSynsets)
+            throws ExecutionException {
+        //Create a map to hold the similarity config params
+        Map<String, String> params = new HashMap<String, String>();
+
+        //the simType parameter is the class name of the measure to use
+        params.put("simType", simType.toClassName());
+
+        if (infoContentFileName != null) {
+            try {
+                params.put("infocontent", infoContentFileName.toURI().toString());
+            } catch (URISyntaxException e) {
+                throw new ExecutionException("URL supplied for infocontent file is not valid");
             }
+        } else {
+            throw new ExecutionException("Infocontent file is required to compute missing similarities.");
+        }
 
-        } catch ( IOException e) {
-            throw new ExecutionException("Error when trying to read the cache file for wordnet similarity", e);
+        try {
+            SimilarityMeasure measure = SimilarityMeasure.newInstance(Dictionary.getInstance(wordnetConfig.openStream()), params);
+
+            // Targets may include a POS tag and sense number, e.g. cat#n#1
+            for (String target : targets) {
+                targetSynsets.add(measure.getSynsets(target));
+            }
+
+            return measure;
+        } catch (IOException e) {
+            throw new ExecutionException("Couldn't find or read WordNet configuration file", e);
+        } catch (JWNLException e) {
+            throw new ExecutionException("Couldn't initialise JWNL to read wordnet database", e);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+
+        if (table != null) {
+            SimilarityTableRegistry.release(table);
+            table = null;
+        }
+
+        if (overflow != null) {
+            try {
+                SimilarityOverflow.release(overflow);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            overflow = null;
         }
+
+        sim = null;
+        targetSynsets = null;
     }
 
 
@@ -116,6 +280,15 @@ public class CachedSimilarity extends AbstractLanguageAnalyser implements
     private String textFeature;
 
     private URL cacheLocation;
+    private List<String> targetWords;
+
+    private OutputModeEnum outputMode;
+    private String scoresFeature;
+
+    private URL overflowLocation;
+    private URL wordnetConfig;
+    private SimilarityTypeEnum simType;
+    private URL infoContentFileName;
 
 
     public String getInputAS() {
@@ -160,4 +333,77 @@ public class CachedSimilarity extends AbstractLanguageAnalyser implements
         return cacheLocation;
     }
 
+    public List<String> getTargetWords() {
+        return targetWords;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "The target words to output scores for, leave empty for all targets in the cache file",
+            collectionElementType = String.class)
+    public void setTargetWords(List<String> targetWords) {
+        this.targetWords = targetWords;
+    }
+
+
+    public OutputModeEnum getOutputMode() {
+        return outputMode;
+    }
+
+    @RunTime
+    @CreoleParameter(comment = "Whether to output a feature per target word, or a single feature holding an array of the scores",
+            defaultValue = "FEATURE_PER_TARGET")
+    public void setOutputMode(OutputModeEnum outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    public String getScoresFeature() {
+        return scoresFeature;
+    }
+
+    @RunTime
+    @CreoleParameter(comment = "The token feature holding the array of scores, the targets are listed in the document feature with this name followed by Targets",
+            defaultValue = "similarity")
+    public void setScoresFeature(String scoresFeature) {
+        this.scoresFeature = scoresFeature;
+    }
+
+    public URL getOverflowLocation() {
+        return overflowLocation;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "File that scores computed for words missing from the cache are added to, and loaded from on the next run")
+    public void setOverflowLocation(URL overflowLocation) {
+        this.overflowLocation = overflowLocation;
+    }
+
+    public URL getWordnetConfig() {
+        return wordnetConfig;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "Location of the wordnet configuration file, needed to compute scores for words missing from the cache")
+    public void setWordnetConfig(URL wordnetConfig) {
+        this.wordnetConfig = wordnetConfig;
+    }
+
+    public SimilarityTypeEnum getSimType() {
+        return simType;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "The kind of similarity measure used to compute scores for words missing from the cache, leave empty to give them 0")
+    public void setSimType(SimilarityTypeEnum simType) {
+        this.simType = simType;
+    }
+
+    public URL getInfoContentFileName() {
+        return infoContentFileName;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "The file containing the information content description to use when computing missing scores")
+    public void setInfoContentFileName(URL infoContentFileName) {
+        this.infoContentFileName = infoContentFileName;
+    }
 }
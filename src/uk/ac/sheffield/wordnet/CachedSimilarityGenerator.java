@@ -0,0 +1,248 @@
+package uk.ac.sheffield.wordnet;
+
+import englishcoffeedrinker.wordnet.similarity.SimilarityMeasure;
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.Synset;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates the table of precomputed scores read by {@link CachedSimilarity}. Every word in the vocabulary is
+ * compared against every target word, with the rows computed in parallel across all the available processors.
+ * Rows are written in vocabulary order as soon as they are finished, so if the generator is interrupted it can be
+ * run again with the same arguments and will carry on from the last complete row.
+ *
+ * Usage: <code>CachedSimilarityGenerator wordnet.xml vocabulary targets LIN|JCN infocontent output [encoding
+ * [infocontent-encoding]]</code> where the vocabulary and targets files contain one word per line. The encoding is
+ * that of the word lists and the output, UTF-8 by default, and the infocontent encoding is that of a text
+ * infocontent file, also UTF-8 by default. Words containing white space can't be written in the table so are
+ * skipped.
+ */
+public class CachedSimilarityGenerator {
+    /**
+     * The number of rows computed together before they are written out.
+     */
+    private static final int CHUNK_SIZE = 1024;
+
+    private final SimilarityMeasure sim;
+    private final List<String> targets;
+
+    public CachedSimilarityGenerator(SimilarityMeasure sim, List<String> targets) {
+        this.sim = sim;
+        this.targets = targets;
+    }
+
+    /**
+     * The first line of the table, the two columns before the scores followed by the target words.
+     */
+    public String getHeader() {
+        return getHeader(targets);
+    }
+
+    static String getHeader(List<String> targets) {
+        StringBuilder header = new StringBuilder("word pos");
+        for (String target : targets) {
+            header.append(' ').append(target);
+        }
+        return header.toString();
+    }
+
+    /**
+     * Computes the table, or the rest of it if the output already contains some of the rows.
+     *
+     * @param vocabulary The words to compute the rows for, in the order they should be written
+     * @param output The file the table is written to
+     * @param encoding The encoding of the output file
+     * @throws IOException If the output couldn't be written or contains a table for different words
+     * @throws JWNLException If an error occurs accessing WordNet
+     */
+    public void generate(List<String> vocabulary, File output, String encoding) throws IOException, JWNLException {
+        // Words that can't be written would make the table unreadable, so they are left out.
+        List<String> writable = new ArrayList<String>(vocabulary.size());
+        for (String word : vocabulary) {
+            if (isWritable(word)) writable.add(word);
+        }
+        vocabulary = writable;
+
+        int done = resume(vocabulary, output, encoding);
+
+        // Targets may include a POS tag and sense number, e.g. cat#n#1
+        List<Set<Synset>> targetSynsets = new ArrayList<Set<Synset>>(targets.size());
+        for (String target : targets) {
+            targetSynsets.add(sim.getSynsets(target));
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output, true), encoding));
+
+        try {
+            if (done == -1) {
+                out.write(getHeader());
+                out.write('\n');
+                done = 0;
+            }
+
+            for (int start = done; start < vocabulary.size(); start += CHUNK_SIZE) {
+                List<String> words = vocabulary.subList(start, Math.min(start + CHUNK_SIZE, vocabulary.size()));
+
+                // The vocabulary is looked up just as the token text is, without parsing.
+                List<Set<Synset>> wordSynsets = new ArrayList<Set<Synset>>(words.size());
+                for (String word : words) {
+                    wordSynsets.add(sim.getSynsets(word, false));
+                }
+
+                double[][] scores = sim.getSynsetSimilarityMatrix(wordSynsets, targetSynsets);
+
+                for (int i = 0; i < scores.length; i++) {
+                    writeRow(out, words.get(i), toFloats(scores[i]));
+                }
+
+                // Make sure finished rows survive an interruption.
+                out.flush();
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Checks how much of the table has already been written, removing any partially written row.
+     *
+     * @return The number of complete rows, or -1 if the file doesn't exist or is empty
+     */
+    private int resume(List<String> vocabulary, File output, String encoding) throws IOException {
+        if (!output.exists()) return -1;
+
+        if (truncatePartialRow(output) == 0) return -1;
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(output), encoding));
+        try {
+            if (!getHeader().equals(in.readLine())) {
+                throw new IOException("Existing output " + output + " was generated for different target words");
+            }
+
+            int rows = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space == -1) throw new IOException("Existing output " + output + " contains a malformed row: " + line);
+
+                String word = line.substring(0, space);
+
+                if (rows >= vocabulary.size() || !vocabulary.get(rows).equals(word)) {
+                    throw new IOException("Existing output " + output + " was generated for a different vocabulary");
+                }
+
+                rows++;
+            }
+
+            return rows;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Can a word be written as a row of the table. Rows are split on spaces when they are read, so the word mustn't be
+     * empty or contain any white space.
+     */
+    static boolean isWritable(String word) {
+        if (word.isEmpty()) return false;
+
+        for (int i = 0; i < word.length(); i++) {
+            if (Character.isWhitespace(word.charAt(i))) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Writes a row of the table: the word, a column that is ignored and then the score against each target. The word
+     * must be one for which {@link #isWritable(String)} is true.
+     */
+    static void writeRow(Writer out, String word, float[] scores) throws IOException {
+        out.write(word);
+        out.write(" ?");
+        for (float score : scores) {
+            out.write(' ');
+            out.write(Float.toString(score));
+        }
+        out.write('\n');
+    }
+
+    static float[] toFloats(double[] scores) {
+        float[] floats = new float[scores.length];
+        for (int i = 0; i < scores.length; i++) {
+            floats[i] = (float) scores[i];
+        }
+        return floats;
+    }
+
+    /**
+     * Drops everything after the last new line of a table, as it was only partially written.
+     *
+     * @return The length of the remaining complete lines
+     */
+    static long truncatePartialRow(File table) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(table, "rw");
+        try {
+            long end = file.length();
+            while (end > 0) {
+                file.seek(end - 1);
+                if (file.read() == '\n') break;
+                end--;
+            }
+            file.setLength(end);
+
+            return end;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Reads a file containing one word per line, ignoring blank lines.
+     */
+    static List<String> readWords(File file, String encoding) throws IOException {
+        List<String> words = new ArrayList<String>();
+
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) words.add(line);
+            }
+        } finally {
+            in.close();
+        }
+
+        return words;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 6 || args.length > 8) {
+            System.err.println("Usage: CachedSimilarityGenerator wordnet.xml vocabulary targets LIN|JCN infocontent output [encoding [infocontent-encoding]]");
+            System.exit(1);
+        }
+
+        String encoding = args.length >= 7 ? args[6] : "UTF-8";
+
+        Dictionary dict = Dictionary.getInstance(new FileInputStream(args[0]));
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("simType", SimilarityTypeEnum.valueOf(args[3].toUpperCase()).toClassName());
+        params.put("infocontent", new File(args[4]).toURI().toString());
+        if (args.length == 8) params.put("encoding", args[7]);
+
+        SimilarityMeasure sim = SimilarityMeasure.newInstance(dict, params);
+
+        CachedSimilarityGenerator generator = new CachedSimilarityGenerator(sim, readWords(new File(args[2]), encoding));
+        generator.generate(readWords(new File(args[1]), encoding), new File(args[5]), encoding);
+    }
+}
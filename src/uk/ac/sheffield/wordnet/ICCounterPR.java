@@ -1,33 +1,279 @@
 package uk.ac.sheffield.wordnet;
 
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import englishcoffeedrinker.wordnet.similarity.MappedFiles;
+import englishcoffeedrinker.wordnet.util.ICCounter;
 import gate.*;
 import gate.creole.AbstractLanguageAnalyser;
+import gate.creole.ControllerAwarePR;
+import gate.creole.ResourceInstantiationException;
 import gate.creole.metadata.CreoleParameter;
 import gate.creole.metadata.CreoleResource;
 import gate.creole.metadata.RunTime;
 import gate.creole.metadata.Optional;
+import gate.creole.metadata.Sharable;
 import gate.creole.ExecutionException;
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import java.io.*;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 
 
 @CreoleResource(name = "WordNet Information Content Counter", comment = "Calculates the information content score for a corpus which can be used in similarity measures.")
 /**
  * Calculates the information content score for a corpus which can be used in similarity measures.
+ *
+ * Each duplicate of the PR counts the documents it is given into its own counter, so duplicates can run in parallel
+ * without locking. When the last running duplicate finishes the counts are merged, propagated and exported once.
  *  @author Dominic Rout
  *
  */
 public class ICCounterPR extends AbstractLanguageAnalyser implements
-        ProcessingResource {
+        ProcessingResource, ControllerAwarePR {
+
+    /**
+     * The state shared between every duplicate of the PR. It is public only so that GATE can pass it to duplicates
+     * through the {@link Sharable} property, and its contents are only accessible within this package.
+     */
+    public static final class SharedCounter {
+        /**
+         * A counter holding the dictionary and compounds, which the counters of each duplicate are copied from.
+         */
+        final ICCounter template;
+
+        /**
+         * The merged counts of the duplicates which have finished the current run.
+         */
+        ICCounter total;
+
+        /**
+         * The number of duplicates in the current run which haven't finished yet.
+         */
+        int running = 0;
+
+        boolean aborted = false;
+
+        SharedCounter(ICCounter template) {
+            this.template = template;
+            this.total = new ICCounter(template);
+        }
+    }
+
+    private SharedCounter shared;
+
+    /**
+     * Whether this instance created the shared state, rather than being a duplicate which was given it.
+     */
+    private boolean ownsShared = false;
+
+    /**
+     * The counts of the documents processed by this duplicate during the current run.
+     */
+    private ICCounter counter;
+
+    @Override
+    public Resource init() throws ResourceInstantiationException {
+        if (shared == null || ownsShared) {
+            // Duplicates are given the state of the original, which is only loaded again when the original is
+            // re-initialised, so that changes to its parameters are picked up.
+            if (wordnetConfig == null) {
+                throw new ResourceInstantiationException("WordNet configuration file must be specified");
+            }
+
+            try {
+                Dictionary dict = Dictionary.getInstance(wordnetConfig.openStream());
+
+                HypernymGraph graph = null;
+                if (hypernymGraph != null) {
+                    graph = HypernymGraph.load(hypernymGraph);
+
+                    if (!graph.getVersion().equals(String.valueOf(dict.getVersion().getNumber()))) {
+                        throw new ResourceInstantiationException("Hypernym graph version doesn't match WordNet version");
+                    }
+                }
+
+                ICCounter template = new ICCounter(dict, resnik, graph);
+                template.setMaxCompoundWords(maxCompoundWords);
+                template.setAggregateWords(aggregateWords);
+
+                shared = new SharedCounter(template);
+                ownsShared = true;
+            } catch (IOException e) {
+                throw new ResourceInstantiationException("Couldn't find or read WordNet configuration file", e);
+            } catch (JWNLException e) {
+                throw new ResourceInstantiationException("Couldn't initialise JWNL to read wordnet database", e);
+            }
+        }
+
+        counter = new ICCounter(shared.template);
+
+        return this;
+    }
 
     @SuppressWarnings("unchecked")
     @Override
     public void execute() throws ExecutionException {
+        AnnotationSet inputSet = document.getAnnotations(inputAS);
+        AnnotationSet tokens = inputSet.get(tokenType);
 
+        try {
+            if (sentenceType == null || sentenceType.isEmpty()) {
+                // Without sentences the whole document is counted as one.
+                counter.countSentence(getWords(tokens));
+            } else {
+                for (Annotation sentence : Utils.inDocumentOrder(inputSet.get(sentenceType))) {
+                    counter.countSentence(getWords(Utils.getContainedAnnotations(tokens, sentence)));
+                }
+            }
+        } catch (JWNLException e) {
+            throw new ExecutionException("Couldn't look up words in the wordnet database", e);
+        }
+    }
+
+    /**
+     * Get the text of the tokens, in the order they appear in the document.
+     */
+    private List<String> getWords(AnnotationSet tokens) {
+        List<String> words = new ArrayList<String>(tokens.size());
+
+        for (Annotation token : Utils.inDocumentOrder(tokens)) {
+            String text = (String) token.getFeatures().get(textFeature);
+            if (text != null) words.add(text);
+        }
+
+        return words;
+    }
+
+    @Override
+    public void controllerExecutionStarted(Controller controller) throws ExecutionException {
+        synchronized (shared) {
+            shared.running++;
+        }
+
+        counter = new ICCounter(shared.template);
+    }
+
+    @Override
+    public void controllerExecutionFinished(Controller controller) throws ExecutionException {
+        ICCounter total = null;
+        ExecutionException failure = null;
+
+        synchronized (shared) {
+            try {
+                if (!shared.aborted) shared.total.merge(counter);
+            } catch (JWNLException e) {
+                // The run can't be exported without these counts.
+                shared.aborted = true;
+                failure = new ExecutionException("Couldn't look up words in the wordnet database", e);
+            }
+            counter = new ICCounter(shared.template);
+
+            // Only the last duplicate to finish exports the counts.
+            if (--shared.running == 0) {
+                total = (shared.aborted ? null : shared.total);
+                shared.total = new ICCounter(shared.template);
+                shared.aborted = false;
+            }
+        }
+
+        if (failure != null) throw failure;
+        if (total != null) export(total);
+    }
+
+    @Override
+    public void controllerExecutionAborted(Controller controller, Throwable throwable) throws ExecutionException {
+        synchronized (shared) {
+            // The counts of an incomplete run are thrown away rather than exported.
+            shared.aborted = true;
+            counter = new ICCounter(shared.template);
+
+            if (--shared.running > 0) return;
+
+            shared.total = new ICCounter(shared.template);
+            shared.aborted = false;
+        }
+    }
+
+    /**
+     * Propagates and writes the merged counts of a run, which is only done by the last duplicate to finish.
+     */
+    void export(ICCounter total) throws ExecutionException {
+        File file = MappedFiles.toFile(outputFile);
+        if (file == null) throw new ExecutionException("Output file must be a local file");
+
+        try {
+            if (baseCounts != null) {
+                // Add the new corpus to the counts of the earlier ones.
+                InputStream in = baseCounts.openStream();
+                try {
+                    total.mergeCounts(in);
+                } finally {
+                    in.close();
+                }
+            }
+
+            if (countsFile != null) {
+                File counts = MappedFiles.toFile(countsFile);
+                if (counts == null) throw new ExecutionException("Counts file must be a local file");
+
+                total.writeCounts(counts);
+            }
+
+            total.propagateFrequency();
+
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                total.export(out);
+            } finally {
+                out.close();
+            }
+
+            if (out.checkError()) throw new ExecutionException("Couldn't write the information content file");
+
+            if (binaryOutputFile != null) {
+                File binary = MappedFiles.toFile(binaryOutputFile);
+                if (binary == null) throw new ExecutionException("Binary output file must be a local file");
+
+                total.getInformationContent().write(binary);
+            }
+        } catch (IOException e) {
+            throw new ExecutionException("Couldn't write the information content file", e);
+        } catch (JWNLException e) {
+            throw new ExecutionException("Couldn't propagate the counts through the wordnet database", e);
+        }
+    }
+
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        counter = null;
+
+        if (ownsShared) {
+            shared = null;
+            ownsShared = false;
+        }
     }
 
     /**
      * Creole Parameters below this point.
      */
     private String inputAS;
+    private String tokenType;
+    private String sentenceType;
+    private String textFeature;
+
+    private URL wordnetConfig;
+    private URL hypernymGraph;
+    private Boolean resnik;
+    private Integer maxCompoundWords;
+    private Boolean aggregateWords;
+    private URL outputFile;
+    private URL binaryOutputFile;
+    private URL baseCounts;
+    private URL countsFile;
 
     public String getInputAS() {
         return inputAS;
@@ -39,4 +285,131 @@ public class ICCounterPR extends AbstractLanguageAnalyser implements
     public void setInputAS(String inputAS) {
         this.inputAS = inputAS;
     }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    @RunTime
+    @CreoleParameter(comment = "The token type to count.", defaultValue = "Token")
+    public void setTokenType(String tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    public String getSentenceType() {
+        return sentenceType;
+    }
+
+    @RunTime
+    @Optional
+    @CreoleParameter(comment = "The sentence type, compounds are only found within a sentence. Blank to treat each document as one sentence.",
+            defaultValue = "Sentence")
+    public void setSentenceType(String sentenceType) {
+        this.sentenceType = sentenceType;
+    }
+
+    public String getTextFeature() {
+        return textFeature;
+    }
+
+    @RunTime
+    @CreoleParameter(comment = "Feature from the token which contains the text.", defaultValue = "string")
+    public void setTextFeature(String textFeature) {
+        this.textFeature = textFeature;
+    }
+
+    public URL getWordnetConfig() {
+        return wordnetConfig;
+    }
+
+    @CreoleParameter(comment = "Location of the wordnet configuration file")
+    public void setWordnetConfig(URL wordnetConfig) {
+        this.wordnetConfig = wordnetConfig;
+    }
+
+    public URL getHypernymGraph() {
+        return hypernymGraph;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "A hypernym graph built for the same wordnet, used to propagate the counts faster")
+    public void setHypernymGraph(URL hypernymGraph) {
+        this.hypernymGraph = hypernymGraph;
+    }
+
+    public Boolean getResnik() {
+        return resnik;
+    }
+
+    @CreoleParameter(comment = "Divide the count of each word amongst all of its senses", defaultValue = "true")
+    public void setResnik(Boolean resnik) {
+        this.resnik = resnik;
+    }
+
+    public Integer getMaxCompoundWords() {
+        return maxCompoundWords;
+    }
+
+    @CreoleParameter(comment = "The number of words in the longest compound term to look for", defaultValue = "3")
+    public void setMaxCompoundWords(Integer maxCompoundWords) {
+        this.maxCompoundWords = maxCompoundWords;
+    }
+
+    public Boolean getAggregateWords() {
+        return aggregateWords;
+    }
+
+    @CreoleParameter(comment = "Count the occurrences of each word and only look up the distinct words at the end of the corpus. Senses shared by several words may differ in their last bits.",
+            defaultValue = "false")
+    public void setAggregateWords(Boolean aggregateWords) {
+        this.aggregateWords = aggregateWords;
+    }
+
+    public URL getOutputFile() {
+        return outputFile;
+    }
+
+    @CreoleParameter(comment = "The information content file written once the whole corpus has been counted")
+    public void setOutputFile(URL outputFile) {
+        this.outputFile = outputFile;
+    }
+
+    public URL getBinaryOutputFile() {
+        return binaryOutputFile;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "A second information content file written in the binary format, which loads faster")
+    public void setBinaryOutputFile(URL binaryOutputFile) {
+        this.binaryOutputFile = binaryOutputFile;
+    }
+
+    public SharedCounter getShared() {
+        return shared;
+    }
+
+    @Sharable
+    public void setShared(SharedCounter shared) {
+        this.shared = shared;
+    }
+
+    public URL getBaseCounts() {
+        return baseCounts;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "Raw counts of earlier corpora, written to the counts file of an earlier run, which the counts of this corpus are added to")
+    public void setBaseCounts(URL baseCounts) {
+        this.baseCounts = baseCounts;
+    }
+
+    public URL getCountsFile() {
+        return countsFile;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "File the raw counts are written to, including any base counts, so later corpora can be added to them")
+    public void setCountsFile(URL countsFile) {
+        this.countsFile = countsFile;
+    }
 }
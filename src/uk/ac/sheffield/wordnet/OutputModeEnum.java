@@ -0,0 +1,16 @@
+package uk.ac.sheffield.wordnet;
+
+/**
+ * Defines the ways {@link CachedSimilarity} can add the scores to each token.
+ */
+public enum OutputModeEnum {
+    /**
+     * A feature for each target word, named after the target.
+     */
+    FEATURE_PER_TARGET,
+
+    /**
+     * A single feature holding a float array of the scores, in the order of the target list added to the document.
+     */
+    ARRAY
+}
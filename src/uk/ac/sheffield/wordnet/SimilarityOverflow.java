@@ -0,0 +1,139 @@
+package uk.ac.sheffield.wordnet;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the similarity scores {@link CachedSimilarity} computes for words which aren't in its table. Scores can be
+ * backed by a file, in the same text format as the table, to which every newly computed row is appended so that the
+ * next run can load them rather than computing them again.
+ *
+ * Stores backed by the same file are shared by every PR that uses them, and are reference counted so that the file
+ * is closed once no PR is using it.
+ */
+final class SimilarityOverflow {
+    private static final String UTF8 = "UTF-8";
+
+    private static final Map<String, SimilarityOverflow> open = new HashMap<String, SimilarityOverflow>();
+
+    private final String key;
+    private final List<String> targets;
+    private final Map<String, float[]> rows = new ConcurrentHashMap<String, float[]>();
+
+    /**
+     * The file rows are appended to, or null if the rows are only held in memory.
+     */
+    private Writer out;
+
+    private int references = 0;
+
+    private SimilarityOverflow(String key, List<String> targets) {
+        this.key = key;
+        this.targets = new ArrayList<String>(targets);
+    }
+
+    /**
+     * Creates a store which only holds its rows in memory.
+     */
+    static SimilarityOverflow inMemory(List<String> targets) {
+        return new SimilarityOverflow(null, targets);
+    }
+
+    /**
+     * Get the store backed by a file, loading any rows already in it. Each call must be matched by a call to
+     * {@link #release(SimilarityOverflow)}.
+     *
+     * @param file The file the rows are kept in, which is created if it doesn't exist
+     * @param targets The targets the scores in each row are for
+     * @throws IOException If the file couldn't be read, or holds scores for different targets
+     */
+    static synchronized SimilarityOverflow acquire(File file, List<String> targets) throws IOException {
+        String key = file.getCanonicalPath();
+
+        SimilarityOverflow overflow = open.get(key);
+
+        if (overflow == null) {
+            overflow = new SimilarityOverflow(key, targets);
+            overflow.open(file);
+            open.put(key, overflow);
+        } else if (!overflow.targets.equals(targets)) {
+            throw new IOException("Overflow file " + file + " is already in use for different target words");
+        }
+
+        overflow.references++;
+        return overflow;
+    }
+
+    /**
+     * Releases a store previously returned by {@link #acquire(File, List)}, closing its file if it is no longer used.
+     */
+    static synchronized void release(SimilarityOverflow overflow) throws IOException {
+        if (overflow.key == null || --overflow.references > 0) return;
+
+        open.remove(overflow.key);
+        overflow.close();
+    }
+
+    private void open(File file) throws IOException {
+        boolean exists = file.exists() && CachedSimilarityGenerator.truncatePartialRow(file) > 0;
+
+        if (exists) {
+            SimilarityTable table = SimilarityTable.load(file.toURI().toURL(), UTF8);
+
+            if (!table.getTargets().equals(targets)) {
+                throw new IOException("Overflow file " + file + " holds scores for different target words");
+            }
+
+            for (int row = 0; row < table.size(); row++) {
+                float[] scores = new float[targets.size()];
+                for (int column = 0; column < scores.length; column++) {
+                    scores[column] = table.getScore(row, column);
+                }
+                rows.put(table.getWord(row), scores);
+            }
+        }
+
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF8));
+
+        if (!exists) {
+            out.write(CachedSimilarityGenerator.getHeader(targets));
+            out.write('\n');
+            out.flush();
+        }
+    }
+
+    private synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Get the scores of a word.
+     *
+     * @return The score against each target, or null if the word isn't in the store
+     */
+    float[] get(String word) {
+        return rows.get(word);
+    }
+
+    /**
+     * Adds the scores of a word, appending them to the file unless the word is already in the store. Words containing
+     * white space can't be written in the text format so are only held in memory.
+     */
+    synchronized void add(String word, float[] scores) throws IOException {
+        if (rows.containsKey(word)) return;
+
+        rows.put(word, scores);
+
+        if (out != null && CachedSimilarityGenerator.isWritable(word)) {
+            CachedSimilarityGenerator.writeRow(out, word, scores);
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,575 @@
+package uk.ac.sheffield.wordnet;
+
+import englishcoffeedrinker.wordnet.similarity.MappedFiles;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.*;
+
+/**
+ * A table of precomputed similarity scores between a set of words and a set of target words, as used by
+ * {@link CachedSimilarity}.
+ *
+ * The words are held as a sorted dictionary of UTF-8 strings, with the scores in a single row-major float matrix
+ * where each row is a word and each column a target. Tables in the binary format are memory mapped, so they load
+ * instantly, pages are only read when they are used, and processes on the same host share the physical memory.
+ * Tables are immutable and so safe to share between threads.
+ *
+ * A table can be restricted to just some of its targets. Text tables then only parse the wanted columns, while
+ * binary tables are viewed through a column mapping so that the rest of the matrix is never copied.
+ */
+public final class SimilarityTable {
+    /**
+     * The first four bytes of a binary table, "WNST".
+     */
+    private static final int MAGIC = 0x574E5354;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String UTF8 = "UTF-8";
+
+    private final List<String> targets;
+    private final int rows;
+
+    /**
+     * The start of each word in the word bytes, with an extra entry for the end of the last word.
+     */
+    private final IntBuffer starts;
+    private final ByteBuffer words;
+    private final FloatBuffer scores;
+
+    /**
+     * The number of columns stored in each row of the scores.
+     */
+    private final int stride;
+
+    /**
+     * The stored column of each target.
+     */
+    private final int[] columns;
+
+    private SimilarityTable(List<String> targets, int rows, IntBuffer starts, ByteBuffer words, FloatBuffer scores) {
+        this(targets, rows, starts, words, scores, targets.size(), identity(targets.size()));
+    }
+
+    private SimilarityTable(List<String> targets, int rows, IntBuffer starts, ByteBuffer words, FloatBuffer scores,
+                            int stride, int[] columns) {
+        this.targets = Collections.unmodifiableList(targets);
+        this.rows = rows;
+        this.starts = starts;
+        this.words = words;
+        this.scores = scores;
+        this.stride = stride;
+        this.columns = columns;
+    }
+
+    private static int[] identity(int size) {
+        int[] columns = new int[size];
+        for (int i = 0; i < size; i++) {
+            columns[i] = i;
+        }
+        return columns;
+    }
+
+    /**
+     * Get a view of this table restricted to some of its targets, which shares the same storage.
+     *
+     * @param wanted The targets to keep. Any which aren't in this table are ignored.
+     * @return A table with just the wanted targets, in the order they were given
+     */
+    public SimilarityTable project(Collection<String> wanted) {
+        List<String> kept = new ArrayList<String>();
+        int[] projected = new int[wanted.size()];
+
+        for (String target : wanted) {
+            int column = getColumn(target);
+            if (column != -1 && !kept.contains(target)) {
+                projected[kept.size()] = columns[column];
+                kept.add(target);
+            }
+        }
+
+        return new SimilarityTable(kept, rows, starts, words, scores, stride, Arrays.copyOf(projected, kept.size()));
+    }
+
+    /**
+     * The target words, in column order.
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * The number of words in the table.
+     */
+    public int size() {
+        return rows;
+    }
+
+    /**
+     * Finds the column of a target word.
+     *
+     * @return The column index, or -1 if the target isn't in the table
+     */
+    public int getColumn(String target) {
+        return targets.indexOf(target);
+    }
+
+    /**
+     * Finds the row of a word.
+     *
+     * @return The row index, or -1 if the word isn't in the table
+     */
+    public int getRow(String word) {
+        int low = 0;
+        int high = rows - 1;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compare(middle, word);
+
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Get the word in a row.
+     */
+    public String getWord(int row) {
+        int start = starts.get(row);
+        byte[] bytes = new byte[starts.get(row + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = words.get(start + i);
+        }
+
+        try {
+            return new String(bytes, UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Get the similarity between the word in a row and the target in a column.
+     */
+    public float getScore(int row, int column) {
+        return scores.get(row * stride + columns[column]);
+    }
+
+    /**
+     * Get a copy of the similarities between the word in a row and every target.
+     */
+    public float[] getScores(int row) {
+        float[] result = new float[columns.length];
+        for (int column = 0; column < result.length; column++) {
+            result[column] = getScore(row, column);
+        }
+        return result;
+    }
+
+    /**
+     * Compares the word in a row with another word, treating the bytes of their UTF-8 encodings as unsigned. The
+     * other word is encoded as it is compared, so looking up a word allocates nothing.
+     */
+    private int compare(int row, String word) {
+        int position = starts.get(row);
+        int end = starts.get(row + 1);
+
+        int length = word.length();
+        for (int i = 0; i < length; i++) {
+            // The UTF-8 bytes of the next code point, packed from the most significant byte down.
+            int c = word.charAt(i);
+            int bytes;
+            int count;
+
+            if (c < 0x80) {
+                bytes = c << 24;
+                count = 1;
+            } else if (c < 0x800) {
+                bytes = (0xC0 | (c >> 6)) << 24 | (0x80 | (c & 0x3F)) << 16;
+                count = 2;
+            } else if (Character.isHighSurrogate((char) c) && i + 1 < length
+                    && Character.isLowSurrogate(word.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint((char) c, word.charAt(++i));
+                bytes = (0xF0 | (codePoint >> 18)) << 24 | (0x80 | ((codePoint >> 12) & 0x3F)) << 16
+                        | (0x80 | ((codePoint >> 6) & 0x3F)) << 8 | (0x80 | (codePoint & 0x3F));
+                count = 4;
+            } else if (Character.isSurrogate((char) c)) {
+                // An unpaired surrogate is encoded as '?', as String.getBytes does.
+                bytes = '?' << 24;
+                count = 1;
+            } else {
+                bytes = (0xE0 | (c >> 12)) << 24 | (0x80 | ((c >> 6) & 0x3F)) << 16 | (0x80 | (c & 0x3F)) << 8;
+                count = 3;
+            }
+
+            for (int j = 0; j < count; j++) {
+                // The word in the row is a prefix of the other word.
+                if (position == end) return -1;
+
+                int cmp = (words.get(position++) & 0xFF) - ((bytes >>> (24 - 8 * j)) & 0xFF);
+                if (cmp != 0) return cmp;
+            }
+        }
+
+        return position == end ? 0 : 1;
+    }
+
+    /**
+     * Loads a table in either the text format written by {@link CachedSimilarityGenerator} or the binary format.
+     * Binary tables given as a <code>file:</code> URL are memory mapped rather than read.
+     *
+     * @param url The location of the table
+     * @param encoding The encoding of a text table, UTF-8 is used if null
+     * @throws IOException If the table couldn't be read
+     */
+    public static SimilarityTable load(URL url, String encoding) throws IOException {
+        return load(url, encoding, null);
+    }
+
+    /**
+     * Loads just some of the targets of a table in either the text or the binary format.
+     *
+     * @param url The location of the table
+     * @param encoding The encoding of a text table, UTF-8 is used if null
+     * @param wanted The targets to load, or null to load them all. Any which aren't in the table are ignored.
+     * @throws IOException If the table couldn't be read
+     * @see #project(Collection)
+     */
+    public static SimilarityTable load(URL url, String encoding, Collection<String> wanted) throws IOException {
+        if (!isBinary(url)) {
+            InputStream in = url.openStream();
+            try {
+                return loadText(in, encoding, wanted);
+            } finally {
+                in.close();
+            }
+        }
+
+        SimilarityTable table = loadBinary(MappedFiles.map(url));
+        return wanted == null ? table : table.project(wanted);
+    }
+
+    /**
+     * Checks if a file is a table in the binary format.
+     */
+    public static boolean isBinary(URL url) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(url.openStream()));
+        try {
+            return in.readInt() == MAGIC;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the text format. The first line holds two columns that are ignored and then the target words, each
+     * following line a word, a column that is ignored and then the score against each target, all separated by
+     * single spaces. Scores missing from the end of a row are 0.
+     */
+    private static SimilarityTable loadText(InputStream stream, String encoding, Collection<String> wanted)
+            throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(stream, encoding == null ? UTF8 : encoding));
+
+        String line = in.readLine();
+        if (line == null) throw new IOException("Similarity table was empty");
+
+        List<String> header = Arrays.asList(line.split(" "));
+        if (header.size() < 2) throw new IOException("Malformed similarity table header: " + line);
+
+        List<String> targets = header.subList(2, header.size());
+
+        // The column of the line each kept target is read from.
+        List<String> kept = new ArrayList<String>();
+        int[] fields;
+
+        if (wanted == null) {
+            kept.addAll(targets);
+            fields = identity(targets.size());
+        } else {
+            fields = new int[wanted.size()];
+            for (String target : wanted) {
+                int column = targets.indexOf(target);
+                if (column != -1 && !kept.contains(target)) {
+                    fields[kept.size()] = column;
+                    kept.add(target);
+                }
+            }
+            fields = Arrays.copyOf(fields, kept.size());
+        }
+
+        int columns = kept.size();
+
+        // The words and scores of each row in the order they are read, held in arrays which grow as needed.
+        byte[] rowWords = new byte[4096];
+        int[] rowStarts = new int[257];
+        float[] scores = new float[256 * columns];
+        int count = 0;
+
+        while ((line = in.readLine()) != null) {
+            String[] data = line.split(" ");
+
+            if (data.length - 2 > targets.size()) {
+                throw new IOException("Row for " + data[0] + " has more scores than there are targets");
+            }
+
+            byte[] word = utf8(data[0]);
+            int wordStart = rowStarts[count];
+
+            if (count + 2 > rowStarts.length) rowStarts = Arrays.copyOf(rowStarts, grow(rowStarts.length, count + 2));
+            if (wordStart + word.length > rowWords.length) {
+                rowWords = Arrays.copyOf(rowWords, grow(rowWords.length, wordStart + word.length));
+            }
+            if ((count + 1) * columns > scores.length) {
+                scores = Arrays.copyOf(scores, grow(scores.length, (count + 1) * columns));
+            }
+
+            System.arraycopy(word, 0, rowWords, wordStart, word.length);
+            rowStarts[count + 1] = wordStart + word.length;
+
+            // Only the wanted columns are parsed, scores missing from the end of the row are 0.
+            for (int i = 0; i < columns; i++) {
+                if (fields[i] + 2 < data.length) scores[count * columns + i] = Float.parseFloat(data[fields[i] + 2]);
+            }
+
+            count++;
+        }
+
+        // Sort the rows by word. The sort is stable, so the last row for each word is the last of its run, and is
+        // the one kept, with the rows it replaces moved after all of the kept rows.
+        int[] order = identity(count);
+        sortByWord(order, rowWords, rowStarts);
+
+        int[] permutation = new int[count];
+        int rows = 0;
+        int dropped = count;
+        int length = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (i + 1 < count && compareWords(rowWords, rowStarts, order[i], order[i + 1]) == 0) {
+                permutation[--dropped] = order[i];
+            } else {
+                permutation[rows++] = order[i];
+                length += rowStarts[order[i] + 1] - rowStarts[order[i]];
+            }
+        }
+
+        int[] starts = new int[rows + 1];
+        byte[] words = new byte[length];
+        for (int i = 0; i < rows; i++) {
+            int row = permutation[i];
+            int wordLength = rowStarts[row + 1] - rowStarts[row];
+
+            System.arraycopy(rowWords, rowStarts[row], words, starts[i], wordLength);
+            starts[i + 1] = starts[i] + wordLength;
+        }
+
+        permuteRows(scores, columns, permutation);
+
+        return new SimilarityTable(kept, rows, IntBuffer.wrap(starts), ByteBuffer.wrap(words),
+                FloatBuffer.wrap(scores, 0, rows * columns));
+    }
+
+    /**
+     * Get the new length of a growing array, at least half as long again.
+     */
+    private static int grow(int length, int needed) {
+        return Math.max(needed, length + (length >> 1) + 16);
+    }
+
+    /**
+     * Compares the words of two rows being loaded, treating the bytes as unsigned, which is the order the words are
+     * stored in.
+     */
+    private static int compareWords(byte[] words, int[] starts, int a, int b) {
+        int aStart = starts[a];
+        int aLength = starts[a + 1] - aStart;
+        int bStart = starts[b];
+        int bLength = starts[b + 1] - bStart;
+
+        for (int i = 0; i < aLength && i < bLength; i++) {
+            int cmp = (words[aStart + i] & 0xFF) - (words[bStart + i] & 0xFF);
+            if (cmp != 0) return cmp;
+        }
+
+        return aLength - bLength;
+    }
+
+    /**
+     * Sorts row numbers by the words of the rows with a stable bottom-up merge sort.
+     */
+    private static void sortByWord(int[] order, byte[] words, int[] starts) {
+        int[] from = order;
+        int[] to = new int[order.length];
+
+        for (int width = 1; width < order.length; width <<= 1) {
+            for (int low = 0; low < order.length; low += width << 1) {
+                int middle = Math.min(low + width, order.length);
+                int high = Math.min(low + (width << 1), order.length);
+
+                int left = low;
+                int right = middle;
+                for (int i = low; i < high; i++) {
+                    if (left < middle && (right == high || compareWords(words, starts, from[left], from[right]) <= 0)) {
+                        to[i] = from[left++];
+                    } else {
+                        to[i] = from[right++];
+                    }
+                }
+            }
+
+            int[] swap = from;
+            from = to;
+            to = swap;
+        }
+
+        if (from != order) System.arraycopy(from, 0, order, 0, order.length);
+    }
+
+    /**
+     * Moves the rows of a row-major matrix in place, so that row i ends up holding the row that was at
+     * permutation[i], following each cycle of the permutation with a single spare row.
+     */
+    private static void permuteRows(float[] matrix, int columns, int[] permutation) {
+        float[] spare = new float[columns];
+        boolean[] placed = new boolean[permutation.length];
+
+        for (int start = 0; start < permutation.length; start++) {
+            if (placed[start] || permutation[start] == start) continue;
+
+            System.arraycopy(matrix, start * columns, spare, 0, columns);
+
+            int row = start;
+            while (true) {
+                placed[row] = true;
+
+                int next = permutation[row];
+                if (next == start) {
+                    System.arraycopy(spare, 0, matrix, row * columns, columns);
+                    break;
+                }
+
+                System.arraycopy(matrix, next * columns, matrix, row * columns, columns);
+                row = next;
+            }
+        }
+    }
+
+    /**
+     * Reads the binary format. The layout is a header of
+     * <ul>
+     * <li>the magic number and format version (two ints)</li>
+     * <li>the number of targets and of words (two ints)</li>
+     * <li>each target (an int length followed by UTF-8 bytes)</li>
+     * </ul>
+     * followed, each starting at a multiple of eight bytes, by the start of each word (an int per word plus the end
+     * of the last), the sorted UTF-8 bytes of the words and the row-major matrix of scores (floats).
+     */
+    private static SimilarityTable loadBinary(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) throw new IOException("Malformed similarity table");
+        if (buffer.getInt() != FORMAT_VERSION) throw new IOException("Unsupported similarity table format version");
+
+        int columns = buffer.getInt();
+        int rows = buffer.getInt();
+
+        List<String> targets = new ArrayList<String>(columns);
+        for (int i = 0; i < columns; i++) {
+            byte[] target = new byte[buffer.getInt()];
+            buffer.get(target);
+            targets.add(new String(target, UTF8));
+        }
+
+        int position = MappedFiles.align(buffer.position());
+
+        buffer.position(position);
+        IntBuffer starts = buffer.slice().asIntBuffer();
+        starts.limit(rows + 1);
+        position += MappedFiles.align((rows + 1) * 4);
+
+        int length = starts.get(rows);
+
+        buffer.position(position);
+        ByteBuffer words = buffer.slice();
+        words.limit(length);
+        position += MappedFiles.align(length);
+
+        buffer.position(position);
+        FloatBuffer scores = buffer.slice().asFloatBuffer();
+        scores.limit(rows * columns);
+
+        return new SimilarityTable(targets, rows, starts, words, scores);
+    }
+
+    /**
+     * Writes this table in the binary format.
+     *
+     * @param out The stream to write to, which is not closed
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(targets.size());
+        data.writeInt(rows);
+
+        // Standard UTF-8 rather than writeUTF, which changes NUL and supplementary characters.
+        for (String target : targets) {
+            byte[] bytes = utf8(target);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+        MappedFiles.pad(data);
+
+        for (int i = 0; i <= rows; i++) {
+            data.writeInt(starts.get(i));
+        }
+        MappedFiles.pad(data);
+
+        for (int i = 0; i < starts.get(rows); i++) {
+            data.writeByte(words.get(i));
+        }
+        MappedFiles.pad(data);
+
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < targets.size(); column++) {
+                data.writeFloat(getScore(row, column));
+            }
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Writes this table in the binary format.
+     */
+    public void write(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] utf8(String word) {
+        try {
+            return word.getBytes(UTF8);
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package uk.ac.sheffield.wordnet;
+
+import java.io.File;
+
+/**
+ * Converts a {@link CachedSimilarity} table in the text format into the binary format which can be memory mapped.
+ *
+ * Usage: <code>SimilarityTableConverter input output [encoding]</code>
+ */
+public class SimilarityTableConverter {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: SimilarityTableConverter input output [encoding]");
+            System.exit(1);
+        }
+
+        SimilarityTable table = SimilarityTable.load(new File(args[0]).toURI().toURL(), args.length == 3 ? args[2] : null);
+
+        table.write(new File(args[1]));
+    }
+}
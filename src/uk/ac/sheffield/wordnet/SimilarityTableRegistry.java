@@ -0,0 +1,113 @@
+package uk.ac.sheffield.wordnet;
+
+import englishcoffeedrinker.wordnet.similarity.MappedFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JVM wide registry of loaded {@link SimilarityTable}s, so that every duplicate of a {@link CachedSimilarity} PR
+ * shares a single copy of each table.
+ *
+ * Tables are reference counted. Once a table is no longer in use it is only softly held, so that re-initialising an
+ * application doesn't reload files that haven't changed, but the memory can still be reclaimed if it is needed.
+ * Local files are identified by their modification time and length as well as their location, so a table is
+ * reloaded if its file changes.
+ */
+final class SimilarityTableRegistry {
+    private static final Map<String, Entry> tables = new HashMap<String, Entry>();
+
+    private SimilarityTableRegistry() {
+        // A utility class so no instances
+    }
+
+    private static final class Entry {
+        final String location;
+
+        /**
+         * The table while it is in use.
+         */
+        SimilarityTable table;
+
+        /**
+         * The table once it is no longer in use.
+         */
+        SoftReference<SimilarityTable> released;
+
+        int references = 0;
+
+        Entry(String location) {
+            this.location = location;
+        }
+    }
+
+    /**
+     * Get a table, loading it only if it isn't already loaded. Each call must be matched by a call to
+     * {@link #release(SimilarityTable)} once the table is no longer needed. Tables restricted to different targets
+     * are loaded separately.
+     *
+     * @param url The location of the table
+     * @param encoding The encoding of a text table
+     * @param wanted The targets to load, or null to load them all
+     * @throws IOException If the table couldn't be loaded
+     */
+    static synchronized SimilarityTable acquire(URL url, String encoding, List<String> wanted) throws IOException {
+        String location = url.toExternalForm() + " " + encoding + " " + wanted;
+        String key = location + " " + identity(url);
+
+        Entry entry = tables.get(key);
+
+        if (entry != null && entry.table == null) {
+            // Reuse a table that is no longer in use, if it hasn't been reclaimed.
+            entry.table = entry.released.get();
+            entry.released = null;
+        }
+
+        if (entry == null || entry.table == null) {
+            // Forget any unused tables loaded from an older version of the file.
+            Iterator<Entry> it = tables.values().iterator();
+            while (it.hasNext()) {
+                Entry old = it.next();
+                if (old.location.equals(location) && old.references == 0) it.remove();
+            }
+
+            entry = new Entry(location);
+            entry.table = SimilarityTable.load(url, encoding, wanted);
+            tables.put(key, entry);
+        }
+
+        entry.references++;
+        return entry.table;
+    }
+
+    /**
+     * Releases a table previously returned by {@link #acquire(URL, String, List)}.
+     */
+    static synchronized void release(SimilarityTable table) {
+        for (Entry entry : tables.values()) {
+            if (entry.table == table) {
+                if (--entry.references == 0) {
+                    entry.released = new SoftReference<SimilarityTable>(table);
+                    entry.table = null;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Identifies the version of a file, so that a changed file isn't mistaken for the one already loaded.
+     */
+    private static String identity(URL url) {
+        File file = MappedFiles.toFile(url);
+        if (file == null) return "";
+
+        return file.lastModified() + " " + file.length();
+    }
+}
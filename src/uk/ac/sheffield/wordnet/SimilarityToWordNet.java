@@ -21,8 +21,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -40,6 +43,18 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
 
     private Dictionary dict = null;
 
+    /**
+     * The location of the WordNet configuration the current dictionary was loaded from.
+     */
+    private String dictConfig = null;
+
+    /**
+     * The similarity measure, built once and then reused for every document so that the
+     * information content, mappings and cache are shared across the whole corpus. It is
+     * discarded whenever one of the parameters it is built from changes.
+     */
+    private SimilarityMeasure sim = null;
+
     private void initDictionary() throws ExecutionException {
         try {
             if (wordnetConfig == null) {
@@ -47,6 +62,10 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
             }
 
             dict = Dictionary.getInstance(wordnetConfig.openStream());
+            dictConfig = wordnetConfig.toExternalForm();
+
+            // Any existing measure refers to the old dictionary so must be rebuilt.
+            sim = null;
         } catch (IOException e) {
             throw new ExecutionException("Couldn't find or read WordNet configuration file",e);
         } catch (JWNLException e) {
@@ -54,46 +73,74 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
         }
     }
 
-    @SuppressWarnings("unchecked")
-    @Override
-    public void execute() throws ExecutionException {
-        if (dict == null) {
-            initDictionary();
+    /**
+     * Creates the similarity measure, unless we already have one built from the current
+     * parameters.
+     */
+    private void initSimilarityMeasure() throws ExecutionException {
+        if (sim != null) {
+            return;
         }
 
-        //create the similarity measure
-        SimilarityMeasure sim;
         try {
             sim = SimilarityMeasure.newInstance(dict, getSimParams());
         } catch (IOException e) {
             throw new ExecutionException(e);
         }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public void execute() throws ExecutionException {
+        if (dict == null || wordnetConfig == null || !wordnetConfig.toExternalForm().equals(dictConfig)) {
+            initDictionary();
+        }
+
+        initSimilarityMeasure();
 
         AnnotationSet inputSet = document.getAnnotations(inputAS);
         try {
 
             Set<Synset> targetSynsets = sim.getSynsets(targetSynset);
 
+            // Only try to calculate similarity for tokens that are in wordnet
+            List<Annotation> tokens = new ArrayList<Annotation>();
+            List<Set<Synset>> tokenSynsets = new ArrayList<Set<Synset>>();
+
             for (Annotation token : inputSet.get(tokenType)) {
                 String tokenText = (String) token.getFeatures().get(textFeature);
 
-                Set<Synset> tokenSynsets = sim.getSynsets(tokenText, false);
-                // Only try to calculate similarity for tokens that are in wordnet
-                if (tokenSynsets.size() != 0) {
-                    SimilarityInfo similarity = sim.getSimilarity(tokenText, targetSynset, tokenSynsets, targetSynsets);
-
-                    token.getFeatures().put(outputFeature, similarity.getSimilarity());
+                Set<Synset> synsets = sim.getSynsets(tokenText, false);
+                if (synsets.size() != 0) {
+                    tokens.add(token);
+                    tokenSynsets.add(synsets);
                 } else {
                     // Default to 0 if the word is not in WordNet.
                     // NB that some measures cannot ordinarily produce 0 scores.
                     token.getFeatures().put(outputFeature, 0);
                 }
             }
+
+            // Compare all the tokens at once so the target is only prepared once per document.
+            double[] similarities = sim.getSimilarities(targetSynsets, tokenSynsets);
+
+            for (int i = 0; i < similarities.length; i++) {
+                tokens.get(i).getFeatures().put(outputFeature, similarities[i]);
+            }
         } catch (JWNLException e) {
             e.printStackTrace();
         }
     }
 
+    @Override
+    public void cleanup() {
+        super.cleanup();
+
+        sim = null;
+        dict = null;
+        dictConfig = null;
+    }
+
     private Map<String, String> getSimParams() throws ExecutionException {
         //Create a map to hold the similarity config params
         Map<String,String> params = new HashMap<String,String>();
@@ -118,7 +165,6 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
             //this param should be the URL to a mapping file if the
             //user needs to make synset mappings
             try {
-                System.out.println(mappingFileName.toURI().toString());
                 params.put("mapping", mappingFileName.toURI().toString());
             } catch (URISyntaxException e) {
                 throw new ExecutionException("URL supplied for mapping file is not valid");
@@ -130,6 +176,13 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
         return params;
     }
 
+    /**
+     * Compares two locations without the host lookups done by {@link URL#equals(Object)}.
+     */
+    private static boolean sameLocation(URL a, URL b) {
+        return (a == null ? b == null : b != null && a.toExternalForm().equals(b.toExternalForm()));
+    }
+
     public void runSimpleTest() throws ExecutionException {
         try {
             Dictionary dict = Dictionary.getInstance(
@@ -229,6 +282,7 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
     @RunTime
     @CreoleParameter(comment = "The kind of similarity measure to use", defaultValue = "LIN")
     public void setSimType(SimilarityTypeEnum simType) {
+        if (!Objects.equals(this.simType, simType)) sim = null;
         this.simType = simType;
     }
 
@@ -238,6 +292,7 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
     @Optional
     @CreoleParameter(comment = "The file containing the information content description to use")
     public void setInfoContentFileName(URL infoContentFileName) {
+        if (!sameLocation(this.infoContentFileName, infoContentFileName)) sim = null;
         this.infoContentFileName = infoContentFileName;
     }
 
@@ -248,6 +303,7 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
     @Optional
     @CreoleParameter(comment = "File containing additional mappings for wordnet")
     public void setMappingFileName(URL mappingFileName) {
+        if (!sameLocation(this.mappingFileName, mappingFileName)) sim = null;
         this.mappingFileName = mappingFileName;
     }
 
@@ -257,6 +313,7 @@ public class SimilarityToWordNet extends AbstractLanguageAnalyser implements
 
     @CreoleParameter(comment = "Encoding for the information content and  mappings files", defaultValue = "utf-8")
     public void setMappingInfoContentEncoding(String mappingInfoContentEncoding) {
+        if (!Objects.equals(this.mappingInfoContentEncoding, mappingInfoContentEncoding)) sim = null;
         this.mappingInfoContentEncoding = mappingInfoContentEncoding;
     }
 
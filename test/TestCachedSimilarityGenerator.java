@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import englishcoffeedrinker.wordnet.similarity.Lin;
+import uk.ac.sheffield.wordnet.CachedSimilarityGenerator;
+
+/**
+ * Checks that the generated score tables are correct and that an
+ * interrupted run can be resumed.
+ */
+public class TestCachedSimilarityGenerator
+{
+	private static final List<String> VOCABULARY = Arrays.asList("dog", "cat", "time", "organization", "xyzzy",
+			"person", "coffee", "shirt", "run", "walk", "eat", "drink", "entity", "house");
+
+	private static final List<String> TARGETS = Arrays.asList("animal", "food#n", "move#v#1");
+
+	private static Lin sim;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		sim = new Lin(Dictionary.getInstance(new FileInputStream("test/wordnet.xml")));
+		sim.loadInfoContent("file:test/ic-bnc-resnik-add1.dat", "us-ascii");
+	}
+
+	private static List<String> read(File file) throws Exception {
+		List<String> lines = new ArrayList<String>();
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null) lines.add(line);
+		}
+		finally
+		{
+			in.close();
+		}
+
+		return lines;
+	}
+
+	@Test
+	public void testGenerate() throws Exception {
+		File output = File.createTempFile("similarity", ".txt");
+		output.delete();
+		output.deleteOnExit();
+
+		new CachedSimilarityGenerator(sim, TARGETS).generate(VOCABULARY, output, "UTF-8");
+
+		List<String> lines = read(output);
+		assertEquals(VOCABULARY.size() + 1, lines.size());
+		assertEquals("word pos animal food#n move#v#1", lines.get(0));
+
+		for (int i = 0; i < VOCABULARY.size(); ++i)
+		{
+			String[] row = lines.get(i + 1).split(" ");
+			assertEquals(VOCABULARY.get(i), row[0]);
+			assertEquals("?", row[1]);
+
+			for (int j = 0; j < TARGETS.size(); ++j)
+			{
+				double expected = sim.getSimilarities(TARGETS.get(j), Arrays.asList(VOCABULARY.get(i)))[0];
+				assertEquals(VOCABULARY.get(i) + " " + TARGETS.get(j), expected, Float.parseFloat(row[j + 2]), 0.00001);
+			}
+		}
+	}
+
+	@Test
+	public void testResume() throws Exception {
+		File complete = File.createTempFile("similarity", ".txt");
+		complete.delete();
+		complete.deleteOnExit();
+
+		new CachedSimilarityGenerator(sim, TARGETS).generate(VOCABULARY, complete, "UTF-8");
+
+		//simulate an interruption part way through writing a row
+		File partial = File.createTempFile("similarity", ".txt");
+		partial.deleteOnExit();
+		partial.delete();
+		new CachedSimilarityGenerator(sim, TARGETS).generate(VOCABULARY.subList(0, 5), partial, "UTF-8");
+
+		RandomAccessFile file = new RandomAccessFile(partial, "rw");
+		try
+		{
+			file.seek(file.length());
+			file.writeBytes("person ? 0.1");
+		}
+		finally
+		{
+			file.close();
+		}
+
+		new CachedSimilarityGenerator(sim, TARGETS).generate(VOCABULARY, partial, "UTF-8");
+
+		assertEquals(read(complete), read(partial));
+	}
+
+	@Test
+	public void testWhiteSpace() throws Exception {
+		List<String> vocabulary = Arrays.asList("dog", "ice cream", "cat", "hot\tdog");
+
+		File output = File.createTempFile("similarity", ".txt");
+		output.delete();
+		output.deleteOnExit();
+
+		new CachedSimilarityGenerator(sim, TARGETS).generate(vocabulary, output, "UTF-8");
+
+		//words that can't be written are skipped
+		List<String> lines = read(output);
+		assertEquals(3, lines.size());
+		assertEquals("dog", lines.get(1).split(" ")[0]);
+		assertEquals("cat", lines.get(2).split(" ")[0]);
+
+		//and running again finds the table is already complete
+		new CachedSimilarityGenerator(sim, TARGETS).generate(vocabulary, output, "UTF-8");
+		assertEquals(lines, read(output));
+	}
+}
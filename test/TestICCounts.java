@@ -0,0 +1,132 @@
+import englishcoffeedrinker.wordnet.similarity.InformationContent;
+import englishcoffeedrinker.wordnet.util.ICCounter;
+import net.sf.extjwnl.data.POS;
+import net.sf.extjwnl.dictionary.Dictionary;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that counts combined from several counters, partial count files or aggregated words give exactly the
+ * information content file of counting everything in one counter.
+ */
+public class TestICCounts {
+    private static final String[] SENTENCES = {
+            "the dog ran after a cat into the coffee house",
+            "a person in a shirt will eat and drink for some time"};
+
+    private static Dictionary dict;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        dict = Dictionary.getInstance(new FileInputStream("test/wordnet.xml"));
+    }
+
+    /**
+     * Get the exported lines of a counter, sorted so that they can be compared.
+     */
+    private static String[] export(ICCounter counter) throws Exception {
+        counter.propagateFrequency();
+
+        StringWriter out = new StringWriter();
+        counter.export(new PrintWriter(out));
+
+        String[] lines = out.toString().split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+
+    private static String[] count(ICCounter counter) throws Exception {
+        for (String sentence : SENTENCES) {
+            counter.countSentence(Arrays.asList(sentence.split(" ")));
+        }
+        return export(counter);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        ICCounter template = new ICCounter(dict, true);
+
+        // Counting the sentences in separate counters and merging them should be the same as counting them all in one.
+        ICCounter first = new ICCounter(template);
+        first.countSentence(Arrays.asList(SENTENCES[0].split(" ")));
+        ICCounter merged = new ICCounter(template);
+        merged.countSentence(Arrays.asList(SENTENCES[1].split(" ")));
+        merged.merge(first);
+
+        assertEquals(Arrays.asList(count(new ICCounter(template))), Arrays.asList(export(merged)));
+    }
+
+    @Test
+    public void testPartialCounts() throws Exception {
+        ICCounter template = new ICCounter(dict, true);
+
+        ICCounter shard = new ICCounter(template);
+        for (String sentence : SENTENCES) {
+            shard.countSentence(Arrays.asList(sentence.split(" ")));
+        }
+
+        ByteArrayOutputStream counts = new ByteArrayOutputStream();
+        shard.writeCounts(counts);
+
+        // Counts read back from a partial count file give the same output.
+        ICCounter merged = new ICCounter(template);
+        merged.mergeCounts(new ByteArrayInputStream(counts.toByteArray()));
+
+        assertEquals(Arrays.asList(count(new ICCounter(template))), Arrays.asList(export(merged)));
+    }
+
+    @Test
+    public void testAggregateWords() throws Exception {
+        ICCounter template = new ICCounter(dict, true);
+        String[] plain = count(new ICCounter(template));
+
+        ICCounter aggregating = new ICCounter(template);
+        aggregating.setAggregateWords(true);
+        String[] aggregated = count(aggregating);
+
+        // The occurrences of each word are still added one at a time, and none of the senses of these words are
+        // shared, so the counts are exactly the same.
+        assertEquals(Arrays.asList(plain), Arrays.asList(aggregated));
+    }
+
+    @Test
+    public void testInformationContent() throws Exception {
+        ICCounter counter = new ICCounter(dict, true);
+        String[] lines = count(counter);
+
+        File text = File.createTempFile("ic", ".dat");
+        text.deleteOnExit();
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(text), "UTF-8"));
+        try {
+            counter.export(out);
+        } finally {
+            out.close();
+        }
+
+        // Building the IC straight from the counter only differs from loading the exported file by the precision of
+        // the counts.
+        InformationContent exported = InformationContent.load(text.toURI().toURL(), "UTF-8");
+        InformationContent built = counter.getInformationContent();
+
+        assertEquals(exported.getVersion(), built.getVersion());
+        for (POS pos : new POS[]{POS.NOUN, POS.VERB}) {
+            assertEquals(exported.getRootFrequency(pos), built.getRootFrequency(pos), 0.0001);
+        }
+
+        for (String line : lines) {
+            if (line.startsWith("wnver::")) continue;
+
+            String id = line.substring(0, line.indexOf(' '));
+            POS pos = POS.getPOSForKey(id.charAt(id.length() - 1));
+            long offset = Long.parseLong(id.substring(0, id.length() - 1));
+
+            assertEquals(exported.getFrequency(pos, offset), built.getFrequency(pos, offset), 0.0001);
+            assertEquals(exported.getIC(pos, offset), built.getIC(pos, offset), 0.0001);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.net.URL;
+
+import net.sf.extjwnl.data.POS;
+
+import org.junit.Test;
+
+import englishcoffeedrinker.wordnet.similarity.InformationContent;
+
+/**
+ * Tests that the binary information content format holds exactly the same
+ * data as the text file it was converted from.
+ */
+public class TestInformationContent
+{
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		InformationContent text = InformationContent.load(new URL("file:test/ic-bnc-resnik-add1.dat"), "us-ascii");
+
+		File binaryFile = File.createTempFile("infocontent", ".bin");
+		binaryFile.deleteOnExit();
+		text.write(binaryFile);
+
+		InformationContent binary = InformationContent.load(binaryFile.toURI().toURL(), null);
+
+		assertEquals("2.1", binary.getVersion());
+		assertEquals(text.getRootFrequency(POS.NOUN), binary.getRootFrequency(POS.NOUN), 0);
+		assertEquals(text.getRootFrequency(POS.VERB), binary.getRootFrequency(POS.VERB), 0);
+		assertTrue(binary.getRootFrequency(POS.NOUN) > 0);
+
+		BufferedReader in = new BufferedReader(new FileReader("test/ic-bnc-resnik-add1.dat"));
+		try
+		{
+			in.readLine();
+
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				String id = line.split("\\s+")[0];
+				POS pos = POS.getPOSForKey(id.charAt(id.length() - 1));
+				long offset = Long.parseLong(id.substring(0, id.length() - 1));
+
+				assertEquals(text.getFrequency(pos, offset), binary.getFrequency(pos, offset), 0);
+				assertEquals(text.getIC(pos, offset), binary.getIC(pos, offset), 0);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		//offsets not in the file have no IC
+		assertEquals(0, binary.getIC(POS.NOUN, 3), 0);
+	}
+}
@@ -22,7 +22,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.FileInputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -111,4 +113,29 @@ public class TestJCn
 		
 		assertEquals(0.1687995825035664, info.getSimilarity(), 0.00001);
 	}
+
+	@Test
+	public void testSimilarities() throws Exception {
+		List<String> words = Arrays.asList("dog", "cat#n", "time", "organization", "namperson", "run", "xyzzy");
+
+		//a new measure without a cache so every similarity is computed
+		Map<String,String> params = new HashMap<String,String>();
+		params.put("simType","englishcoffeedrinker.wordnet.similarity.JCn");
+		params.put("infocontent","file:test/ic-bnc-resnik-add1.dat");
+		params.put("mapping","file:test/domain_independent.txt");
+		params.put("encoding", "us-ascii");
+		params.put("cache", "0");
+
+		SimilarityMeasure batch = SimilarityMeasure.newInstance(Dictionary.getInstance(new FileInputStream("test/wordnet.xml")), params);
+
+		double[] scores = batch.getSimilarities("cat", words);
+
+		assertEquals(words.size(), scores.length);
+
+		for (int i = 0; i < scores.length; ++i)
+		{
+			SimilarityInfo info = sim.getSimilarity(words.get(i), "cat");
+			assertEquals(words.get(i), info == null ? 0 : info.getSimilarity(), scores[i], 0.00001);
+		}
+	}
 }
@@ -22,7 +22,9 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.FileInputStream;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import englishcoffeedrinker.wordnet.similarity.ICMeasure;
@@ -130,4 +132,49 @@ public class TestLin
 		
 		assertEquals(0, info.getSimilarity(), 0.00001);
 	}
+
+	@Test
+	public void testSimilarities() throws Exception {
+		List<String> words = Arrays.asList("dog", "cat#n", "time", "organization", "namperson", "run", "xyzzy");
+
+		//a new measure so that nothing is already in the cache
+		Lin batch = new Lin(dict);
+		batch.loadMappings("file:test/domain_independent.txt", "us-ascii");
+		batch.loadInfoContent("file:test/ic-bnc-resnik-add1.dat", "us-ascii");
+
+		double[] scores = batch.getSimilarities("cat", words);
+
+		assertEquals(words.size(), scores.length);
+
+		for (int i = 0; i < scores.length; ++i)
+		{
+			SimilarityInfo info = sim.getSimilarity(words.get(i), "cat");
+			assertEquals(words.get(i), info == null ? 0 : info.getSimilarity(), scores[i], 0.00001);
+		}
+	}
+
+	@Test
+	public void testSimilarityMatrix() throws Exception {
+		List<String> words = Arrays.asList("dog", "cat", "time", "organization", "run", "walk", "xyzzy");
+		List<String> others = Arrays.asList("coffee", "drink", "melbourne");
+
+		//the same list on both sides uses the symmetric code path
+		check(words, words, sim.getSimilarityMatrix(words, words));
+		check(words, others, sim.getSimilarityMatrix(words, others));
+	}
+
+	private static void check(List<String> rows, List<String> columns, double[][] matrix) throws Exception {
+		assertEquals(rows.size(), matrix.length);
+
+		for (int i = 0; i < rows.size(); ++i)
+		{
+			assertEquals(columns.size(), matrix[i].length);
+
+			for (int j = 0; j < columns.size(); ++j)
+			{
+				SimilarityInfo info = sim.getSimilarity(rows.get(i), columns.get(j));
+				assertEquals(rows.get(i) + " " + columns.get(j), info == null ? 0 : info.getSimilarity(), matrix[i][j], 0.00001);
+			}
+		}
+	}
 }
@@ -0,0 +1,205 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.Synset;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import englishcoffeedrinker.wordnet.similarity.AncestorIndex;
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import englishcoffeedrinker.wordnet.similarity.ICMeasure;
+import englishcoffeedrinker.wordnet.similarity.JCn;
+import englishcoffeedrinker.wordnet.similarity.Lin;
+
+/**
+ * Checks that using the ancestor index or the hypernym graph gives exactly
+ * the same similarities as walking the hypernym trees, including when the
+ * IC of a synset can be higher than that of its hyponyms.
+ */
+public class TestLowestCommonSubsumer
+{
+	private static final String[] WORDS = {"dog", "cat", "time", "organization", "melbourne",
+			"person", "coffee", "shirt", "run", "walk", "eat", "drink", "entity", "house"};
+
+	private static final String IC = "file:test/ic-bnc-resnik-add1.dat";
+
+	private static Dictionary dict;
+	private static File index;
+	private static File graph;
+	private static String skewed;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		dict = Dictionary.getInstance(new FileInputStream("test/wordnet.xml"));
+
+		index = File.createTempFile("ancestors", ".bin");
+		index.deleteOnExit();
+		AncestorIndex.build(dict).write(index);
+
+		graph = File.createTempFile("hypernyms", ".bin");
+		graph.deleteOnExit();
+		HypernymGraph.build(dict).write(graph);
+
+		skewed = skew("test/ic-bnc-resnik-add1.dat");
+	}
+
+	/**
+	 * Writes a copy of an IC file in which every synset other than the roots
+	 * is given an arbitrary frequency, so that the IC of many synsets is
+	 * higher than that of their hyponyms.
+	 */
+	private static String skew(String file) throws Exception {
+		File copy = File.createTempFile("skewed", ".dat");
+		copy.deleteOnExit();
+
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		PrintWriter out = new PrintWriter(new FileWriter(copy));
+		try
+		{
+			out.println(in.readLine());
+
+			String line;
+			while ((line = in.readLine()) != null && !line.equals(""))
+			{
+				String[] data = line.split("\\s+");
+
+				if (data.length == 3)
+				{
+					out.println(line);
+				}
+				else
+				{
+					long offset = Long.parseLong(data[0].substring(0, data[0].length() - 1));
+					out.println(data[0] + " " + (offset * 7919 % 1000 + 1));
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+
+		return copy.toURI().toString();
+	}
+
+	private static <T extends ICMeasure> T load(T sim, String ic, File ancestors, File hypernyms) throws Exception {
+		sim.loadInfoContent(ic, "us-ascii");
+		if (ancestors != null) sim.loadAncestorIndex(ancestors.toURI().toString());
+		if (hypernyms != null) sim.loadHypernymGraph(hypernyms.toURI().toString());
+		return sim;
+	}
+
+	private static void compare(ICMeasure plain, ICMeasure other) throws Exception {
+		for (String w1 : WORDS)
+		{
+			for (String w2 : WORDS)
+			{
+				assertEquals(w1 + " " + w2, plain.getSimilarity(w1, w2).getSimilarity(),
+						other.getSimilarity(w1, w2).getSimilarity(), 0.0000001);
+			}
+		}
+	}
+
+	private static void compareMatrix(ICMeasure plain, ICMeasure other) throws Exception {
+		List<String> words = Arrays.asList(WORDS);
+		double[][] matrix = other.getSimilarityMatrix(words, words);
+
+		for (int i = 0; i < WORDS.length; ++i)
+		{
+			for (int j = 0; j < WORDS.length; ++j)
+			{
+				assertEquals(WORDS[i] + " " + WORDS[j], plain.getSimilarity(WORDS[i], WORDS[j]).getSimilarity(),
+						matrix[i][j], 0.0000001);
+			}
+		}
+	}
+
+	/**
+	 * A measure which, like those written before IC values could be passed
+	 * to a subclass, only overrides the pairwise similarity.
+	 */
+	private static class PairwiseLin extends ICMeasure
+	{
+		PairwiseLin(Dictionary dict)
+		{
+			this.dict = dict;
+		}
+
+		@Override
+		public double getSimilarity(Synset s1, Synset s2) throws JWNLException
+		{
+			if (!s1.getPOS().equals(s2.getPOS())) return 0;
+
+			double ic1 = getIC(s1);
+			double ic2 = getIC(s2);
+			if (ic1 == 0 || ic2 == 0) return 0;
+
+			Synset lcs = getLCSbyIC(s1, s2);
+			if (lcs == null) return 0;
+
+			return (2 * getIC(lcs)) / (ic1 + ic2);
+		}
+	}
+
+	@Test
+	public void testLin() throws Exception {
+		Lin plain = load(new Lin(dict), IC, null, null);
+
+		compare(plain, load(new Lin(dict), IC, index, null));
+		compare(plain, load(new Lin(dict), IC, null, graph));
+	}
+
+	@Test
+	public void testJCn() throws Exception {
+		JCn plain = load(new JCn(dict), IC, null, null);
+
+		compare(plain, load(new JCn(dict), IC, index, null));
+		compare(plain, load(new JCn(dict), IC, null, graph));
+	}
+
+	@Test
+	public void testNonMonotoneLin() throws Exception {
+		Lin plain = load(new Lin(dict), skewed, null, null);
+
+		compare(plain, load(new Lin(dict), skewed, index, null));
+		compare(plain, load(new Lin(dict), skewed, null, graph));
+	}
+
+	@Test
+	public void testNonMonotoneJCn() throws Exception {
+		JCn plain = load(new JCn(dict), skewed, null, null);
+
+		compare(plain, load(new JCn(dict), skewed, index, null));
+		compare(plain, load(new JCn(dict), skewed, null, graph));
+	}
+
+	@Test
+	public void testNonMonotoneSimilarityMatrix() throws Exception {
+		Lin plain = load(new Lin(dict), skewed, null, null);
+
+		compareMatrix(plain, load(new Lin(dict), skewed, null, null));
+		compareMatrix(plain, load(new Lin(dict), skewed, index, null));
+		compareMatrix(plain, load(new Lin(dict), skewed, null, graph));
+	}
+
+	@Test
+	public void testPairwiseSubclass() throws Exception {
+		Lin plain = load(new Lin(dict), skewed, null, null);
+
+		compare(plain, load(new PairwiseLin(dict), skewed, null, null));
+		compareMatrix(plain, load(new PairwiseLin(dict), skewed, index, null));
+	}
+}
@@ -0,0 +1,103 @@
+package englishcoffeedrinker.wordnet.similarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import net.sf.extjwnl.data.POS;
+
+import org.junit.Test;
+
+/**
+ * Tests the primitive synset pair cache, which doesn't need WordNet.
+ */
+public class TestSimilarityCache
+{
+	private static long key(long o1, long o2)
+	{
+		return SimilarityCache.key(SimilarityCache.pack(POS.NOUN, o1), SimilarityCache.pack(POS.NOUN, o2));
+	}
+
+	@Test
+	public void testSymmetric() throws Exception {
+		SimilarityCache cache = new SimilarityCache(100);
+
+		cache.put(key(2084071, 2121620), 0.85);
+
+		assertEquals(0.85, cache.get(key(2121620, 2084071)), 0);
+		assertEquals(1, cache.size());
+
+		//the same offset with a different POS tag is a different synset
+		long verb = SimilarityCache.key(SimilarityCache.pack(POS.VERB, 2084071), SimilarityCache.pack(POS.NOUN, 2121620));
+		assertTrue(Double.isNaN(cache.get(verb)));
+	}
+
+	@Test
+	public void testBounded() throws Exception {
+		SimilarityCache cache = new SimilarityCache(160);
+
+		for (int i = 1; i <= 10000; ++i)
+		{
+			cache.put(key(i, i + 1), i);
+			assertEquals(i, cache.get(key(i, i + 1)), 0);
+		}
+
+		assertTrue(cache.size() <= 160);
+
+		//everything left in the cache must still map to the right value
+		int found = 0;
+		for (int i = 1; i <= 10000; ++i)
+		{
+			double sim = cache.get(key(i, i + 1));
+			if (!Double.isNaN(sim))
+			{
+				assertEquals(i, sim, 0);
+				++found;
+			}
+		}
+
+		assertEquals(cache.size(), found);
+	}
+
+	@Test
+	public void testExactBound() throws Exception {
+		//sizes which don't divide evenly between the segments
+		for (int maxSize : new int[] {1, 5, 17, 5000})
+		{
+			SimilarityCache cache = new SimilarityCache(maxSize);
+
+			for (int i = 1; i <= 20000; ++i)
+			{
+				cache.put(key(i, i + 1), i);
+			}
+
+			assertEquals(maxSize, cache.size());
+		}
+	}
+
+	@Test
+	public void testUnbounded() throws Exception {
+		SimilarityCache cache = new SimilarityCache(-1);
+
+		for (int i = 1; i <= 10000; ++i)
+		{
+			cache.put(key(i, 7), i);
+		}
+
+		assertEquals(10000, cache.size());
+
+		for (int i = 1; i <= 10000; ++i)
+		{
+			assertEquals(i, cache.get(key(7, i)), 0);
+		}
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		SimilarityCache cache = new SimilarityCache(0);
+
+		cache.put(key(1, 2), 1);
+
+		assertEquals(0, cache.size());
+		assertTrue(Double.isNaN(cache.get(key(1, 2))));
+	}
+}
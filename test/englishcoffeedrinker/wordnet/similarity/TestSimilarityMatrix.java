@@ -0,0 +1,128 @@
+package englishcoffeedrinker.wordnet.similarity;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.sf.extjwnl.JWNLException;
+import net.sf.extjwnl.data.Synset;
+
+import org.junit.Test;
+
+/**
+ * Tests that a WordNet error in any task of a similarity matrix reaches the
+ * caller as a JWNLException, which doesn't need WordNet.
+ */
+public class TestSimilarityMatrix
+{
+	/**
+	 * A measure whose targets fail once a given number of comparisons have
+	 * been made, without looking at any synsets.
+	 */
+	private static final class FailingMeasure extends SimilarityMeasure
+	{
+		private final JWNLException failure = new JWNLException("WordNet is broken");
+		private final int failAfter;
+		private int compared = 0;
+
+		FailingMeasure(int failAfter)
+		{
+			this.failAfter = failAfter;
+		}
+
+		@Override
+		protected void config(Map<String, String> params)
+		{
+		}
+
+		@Override
+		public double getSimilarity(Synset s1, Synset s2)
+		{
+			return 0;
+		}
+
+		@Override
+		protected boolean comparesAcrossPOS()
+		{
+			return true;
+		}
+
+		@Override
+		protected Target prepare(Set<Synset> targets)
+		{
+			return new Target(targets)
+			{
+				@Override
+				protected double getSimilarity(Target other) throws JWNLException
+				{
+					synchronized (FailingMeasure.this)
+					{
+						if (++compared > failAfter) throw failure;
+					}
+					return 1;
+				}
+			};
+		}
+	}
+
+	private static List<Set<Synset>> sets(int size)
+	{
+		List<Set<Synset>> sets = new ArrayList<Set<Synset>>(size);
+		for (int i = 0; i < size; ++i)
+		{
+			sets.add(Collections.<Synset>emptySet());
+		}
+		return sets;
+	}
+
+	private static void checkFailure(int size, int failAfter) throws Exception
+	{
+		FailingMeasure measure = new FailingMeasure(failAfter);
+
+		try
+		{
+			measure.getSynsetSimilarityMatrix(sets(size), sets(size + 1));
+			fail("The WordNet error was lost");
+		}
+		catch (JWNLException e)
+		{
+			assertSame(measure.failure, e);
+		}
+	}
+
+	@Test
+	public void testSmallMatrixFails() throws Exception {
+		//small enough to be computed by a single task
+		checkFailure(5, 7);
+	}
+
+	@Test
+	public void testParallelMatrixFails() throws Exception {
+		//split between many tasks, so the error is thrown on another thread
+		for (int failAfter : new int[]{0, 100, 5000, 39000})
+		{
+			checkFailure(200, failAfter);
+		}
+	}
+
+	@Test
+	public void testMatrix() throws Exception {
+		double[][] matrix = new FailingMeasure(Integer.MAX_VALUE).getSynsetSimilarityMatrix(sets(200), sets(201));
+
+		assertEquals(200, matrix.length);
+		for (double[] row : matrix)
+		{
+			assertEquals(201, row.length);
+			for (double sim : row)
+			{
+				assertEquals(1, sim, 0);
+			}
+		}
+	}
+}
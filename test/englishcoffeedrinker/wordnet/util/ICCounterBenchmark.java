@@ -0,0 +1,111 @@
+package englishcoffeedrinker.wordnet.util;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.sf.extjwnl.dictionary.Dictionary;
+
+/**
+ * Reports the throughput of the information content counting, first of
+ * just the term normalisation, old and new, and then of the whole of
+ * {@link ICCounter#countSentence(List)}, with and without aggregating
+ * the words.
+ *
+ * Usage: <code>ICCounterBenchmark [corpus] [repeats]</code>, which
+ * defaults to the test corpus repeated 20 times
+ */
+public class ICCounterBenchmark
+{
+	private interface Task
+	{
+		void run(List<String> sentence) throws Exception;
+	}
+
+	private static void time(String name, List<List<String>> sentences, int repeats, Task task) throws Exception
+	{
+		long terms = 0;
+		for (List<String> sentence : sentences) terms += sentence.size();
+
+		//run once untimed so the JIT has compiled the code being measured
+		for (List<String> sentence : sentences) task.run(sentence);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < repeats; ++i)
+		{
+			for (List<String> sentence : sentences) task.run(sentence);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%-30s %12.0f terms/s%n", name, terms * repeats / seconds);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		String corpus = (args.length > 0 ? args[0] : "test/test-ic-corpus.txt");
+		int repeats = (args.length > 1 ? Integer.parseInt(args[1]) : 20);
+
+		//split into sentences just as TestICCounter does
+		List<List<String>> sentences = new ArrayList<List<String>>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(corpus), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				for (String sentence : line.split("\\."))
+				{
+					List<String> words = new ArrayList<String>(Arrays.asList(sentence.split("\\s")));
+					if (!words.isEmpty()) sentences.add(words);
+				}
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+
+		final List<String> words = new ArrayList<String>();
+
+		time("regular expressions", sentences, repeats, new Task()
+		{
+			public void run(List<String> sentence)
+			{
+				words.clear();
+				for (String term : sentence) TermNormaliser.normaliseSlowly(term, words);
+			}
+		});
+
+		final TermNormaliser normaliser = new TermNormaliser();
+		time("single pass", sentences, repeats, new Task()
+		{
+			public void run(List<String> sentence)
+			{
+				words.clear();
+				for (String term : sentence) normaliser.normalise(term, words);
+			}
+		});
+
+		final ICCounter counter = new ICCounter(Dictionary.getInstance(new FileInputStream("test/wordnet.xml")), true);
+		time("countSentence", sentences, repeats, new Task()
+		{
+			public void run(List<String> sentence) throws Exception
+			{
+				counter.countSentence(sentence);
+			}
+		});
+
+		final ICCounter aggregating = new ICCounter(counter);
+		aggregating.setAggregateWords(true);
+		time("countSentence aggregated", sentences, repeats, new Task()
+		{
+			public void run(List<String> sentence) throws Exception
+			{
+				aggregating.countSentence(sentence);
+			}
+		});
+	}
+}
@@ -0,0 +1,73 @@
+package englishcoffeedrinker.wordnet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests finding compound terms in a sentence, which doesn't need WordNet.
+ */
+public class TestCompoundTrie
+{
+	private static List<String> words(String sentence)
+	{
+		return Arrays.asList(sentence.split(" ", -1));
+	}
+
+	private static CompoundTrie trie()
+	{
+		CompoundTrie trie = new CompoundTrie();
+		trie.add("coffee house");
+		trie.add("coffee house band");
+		trie.add("house band");
+		trie.add("new york");
+		trie.add("new york state fair");
+		trie.add("new york");
+		return trie;
+	}
+
+	@Test
+	public void testLongestMatch() throws Exception {
+		CompoundTrie trie = trie();
+		assertEquals(5, trie.size());
+
+		assertEquals(Arrays.asList("the", "coffee house", "was", "full"),
+				trie.compoundify(words("the coffee house was full"), 3));
+
+		//the longest compound wins and compounds don't overlap
+		assertEquals(Arrays.asList("a", "coffee house band", "played"),
+				trie.compoundify(words("a coffee house band played"), 3));
+
+		//an unfinished longer compound falls back to the shorter one
+		assertEquals(Arrays.asList("new york", "state", "capital"),
+				trie.compoundify(words("new york state capital"), 4));
+
+		//a compound at the very end of the sentence
+		assertEquals(Arrays.asList("to", "new york"), trie.compoundify(words("to new york"), 3));
+	}
+
+	@Test
+	public void testMaxWords() throws Exception {
+		CompoundTrie trie = trie();
+
+		assertEquals(Arrays.asList("new york", "state", "fair"),
+				trie.compoundify(words("new york state fair"), 3));
+		assertEquals(Arrays.asList("new york state fair"),
+				trie.compoundify(words("new york state fair"), 4));
+
+		//a single word maximum means no compounds at all
+		assertEquals(words("new york"), trie.compoundify(words("new york"), 1));
+	}
+
+	@Test
+	public void testEmptyWords() throws Exception {
+		CompoundTrie trie = trie();
+
+		//an empty word, from punctuation, breaks a compound
+		assertEquals(words("coffee  house"), trie.compoundify(words("coffee  house"), 3));
+		assertEquals(Arrays.asList(), trie.compoundify(Arrays.<String>asList(), 3));
+	}
+}
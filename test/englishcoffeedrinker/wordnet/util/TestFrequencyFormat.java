@@ -0,0 +1,54 @@
+package englishcoffeedrinker.wordnet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the frequencies in an exported information content file are
+ * formatted exactly as <code>%f</code> formats them.
+ */
+public class TestFrequencyFormat
+{
+	private static void check(double frequency)
+	{
+		StringBuilder buffer = new StringBuilder();
+		ICCounter.appendFrequency(buffer, frequency);
+
+		assertEquals(String.format(Locale.ROOT, "%f", frequency), buffer.toString());
+	}
+
+	@Test
+	public void testEdgeCases() throws Exception {
+		double[] frequencies = {0, -0.0, 1, 0.5, 0.0000005, 0.0000015, 0.0000004999, 0.9999995, 999999.9999995,
+				999999.9999994, 1e6, 1e6 + 0.5, 1.5e7, 1e15, 1e20, -1.25, Double.NaN, Double.POSITIVE_INFINITY,
+				Float.MIN_VALUE, Double.MIN_VALUE, 1 / 3.0, 2 / 3.0f};
+
+		for (double frequency : frequencies)
+		{
+			check(frequency);
+		}
+	}
+
+	@Test
+	public void testRandomCounts() throws Exception {
+		Random random = new Random(42);
+
+		//the counts are floats, so check floats of every magnitude as well
+		//as the sums of a few fractional senses
+		for (int i = 0; i < 200000; ++i)
+		{
+			check(random.nextFloat() * (float)Math.pow(10, random.nextInt(12) - 4));
+			check((float)random.nextInt(1000) / (1 + random.nextInt(20)));
+		}
+
+		//values that are exactly half way between two results after scaling
+		for (int i = 0; i < 10000; ++i)
+		{
+			check((random.nextInt(2000000) + 0.5) / 1e6);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package englishcoffeedrinker.wordnet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.sf.extjwnl.data.POS;
+
+import org.junit.Test;
+
+import englishcoffeedrinker.wordnet.similarity.HypernymGraph;
+import englishcoffeedrinker.wordnet.similarity.MappedFiles;
+
+/**
+ * Tests that propagating the counts level by level, and updating them
+ * after more have been counted, gives exactly the same result as the
+ * recursive walk down from each root which it replaced. The hierarchies
+ * are random, so WordNet isn't needed.
+ */
+public class TestFrequencyPropagation
+{
+	private static void writeInts(DataOutputStream data, int[] values) throws Exception
+	{
+		for (int value : values) data.writeInt(value);
+		MappedFiles.pad(data);
+	}
+
+	private static int[] starts(List<List<Integer>> targets)
+	{
+		int[] starts = new int[targets.size() + 1];
+		for (int i = 0; i < targets.size(); ++i) starts[i + 1] = starts[i] + targets.get(i).size();
+		return starts;
+	}
+
+	private static int[] flatten(List<List<Integer>> targets)
+	{
+		List<Integer> all = new ArrayList<Integer>();
+		for (List<Integer> list : targets) all.addAll(list);
+
+		int[] values = new int[all.size()];
+		for (int i = 0; i < values.length; ++i) values[i] = all.get(i);
+		return values;
+	}
+
+	/**
+	 * Writes a noun hierarchy in which each synset has up to two hypernyms
+	 * chosen from the synsets before it, so there are no cycles.
+	 */
+	private static HypernymGraph randomGraph(Random random, int size) throws Exception
+	{
+		List<List<Integer>> hypernyms = new ArrayList<List<Integer>>();
+		List<List<Integer>> hyponyms = new ArrayList<List<Integer>>();
+		int[] offsets = new int[size];
+
+		for (int i = 0; i < size; ++i)
+		{
+			offsets[i] = (i + 1) * 10;
+			hypernyms.add(new ArrayList<Integer>());
+			hyponyms.add(new ArrayList<Integer>());
+
+			//roughly one synset in fifty is a root
+			if (i == 0 || random.nextInt(50) == 0) continue;
+
+			int count = 1 + random.nextInt(2);
+			for (int j = 0; j < count; ++j)
+			{
+				//mostly near the synset, giving deep hierarchies
+				int hypernym = Math.max(0, i - 1 - random.nextInt(random.nextBoolean() ? 5 : i));
+				if (!hypernyms.get(i).contains(hypernym))
+				{
+					hypernyms.get(i).add(hypernym);
+					hyponyms.get(hypernym).add(i);
+				}
+			}
+		}
+
+		File file = File.createTempFile("hypernyms", ".bin");
+		file.deleteOnExit();
+
+		DataOutputStream data = new DataOutputStream(new FileOutputStream(file));
+		try
+		{
+			data.writeInt(0x574E4847);
+			data.writeInt(1);
+			data.writeUTF("3.0");
+			data.writeInt(1);
+			data.writeInt(POS.NOUN.getId());
+			data.writeInt(size);
+			data.writeInt(flatten(hypernyms).length);
+			data.writeInt(flatten(hyponyms).length);
+			MappedFiles.pad(data);
+
+			writeInts(data, offsets);
+			writeInts(data, starts(hypernyms));
+			writeInts(data, flatten(hypernyms));
+			writeInts(data, starts(hyponyms));
+			writeInts(data, flatten(hyponyms));
+		}
+		finally
+		{
+			data.close();
+		}
+
+		return HypernymGraph.load(file.toURI().toURL());
+	}
+
+	/**
+	 * The recursive walk ICCounter used to propagate the counts.
+	 */
+	private static float walk(HypernymGraph graph, int ordinal, OffsetCounts raw, OffsetCounts result)
+	{
+		long offset = graph.getOffset(POS.NOUN, ordinal);
+		if (result.containsKey(offset)) return result.get(offset);
+
+		if (graph.getHyponymCount(POS.NOUN, ordinal) == 0)
+		{
+			float value = raw.get(offset);
+			result.put(offset, value);
+			return value;
+		}
+
+		float sum = 0;
+		for (int i = 0; i < graph.getHyponymCount(POS.NOUN, ordinal); ++i)
+		{
+			sum += walk(graph, graph.getHyponym(POS.NOUN, ordinal, i), raw, result);
+		}
+
+		sum += raw.get(offset);
+		result.put(offset, sum);
+		return sum;
+	}
+
+	/**
+	 * The counts propagated by the recursive walk from each root.
+	 */
+	private static OffsetCounts walk(HypernymGraph graph, OffsetCounts raw)
+	{
+		OffsetCounts result = new OffsetCounts(raw);
+		if (!result.containsKey(0)) result.put(0, 0f);
+
+		for (int ordinal = 0; ordinal < graph.size(POS.NOUN); ++ordinal)
+		{
+			if (graph.getHypernymCount(POS.NOUN, ordinal) == 0) result.add(0, walk(graph, ordinal, raw, result));
+		}
+
+		return result;
+	}
+
+	private static FrequencyPropagation propagate(HypernymGraph graph, OffsetCounts raw)
+	{
+		return FrequencyPropagation.propagate(graph, new POS[]{POS.NOUN}, new OffsetCounts[]{raw})[0];
+	}
+
+	private static Map<Long, Float> toMap(OffsetCounts counts)
+	{
+		Map<Long, Float> map = new HashMap<Long, Float>();
+		for (int slot = 0; slot < counts.slots(); ++slot)
+		{
+			if (counts.isUsed(slot)) map.put(counts.offsetAt(slot), counts.countAt(slot));
+		}
+		return map;
+	}
+
+	@Test
+	public void testMatchesRecursiveWalk() throws Exception {
+		Random random = new Random(7);
+
+		for (int size : new int[]{1, 10, 500, 20000})
+		{
+			HypernymGraph graph = randomGraph(random, size);
+
+			OffsetCounts raw = new OffsetCounts();
+			for (int i = 0; i < size; ++i)
+			{
+				//count a few of the synsets, including some with hyponyms
+				if (random.nextInt(4) == 0) raw.add((i + 1) * 10, random.nextInt(3) + random.nextFloat());
+			}
+
+			FrequencyPropagation propagated = propagate(graph, raw);
+			assertEquals("hierarchy of " + size, toMap(walk(graph, raw)), toMap(propagated.getCounts(raw)));
+		}
+	}
+
+	@Test
+	public void testUpdate() throws Exception {
+		Random random = new Random(11);
+
+		for (int size : new int[]{10, 500, 20000})
+		{
+			HypernymGraph graph = randomGraph(random, size);
+
+			OffsetCounts raw = new OffsetCounts();
+			for (int i = 0; i < size; ++i)
+			{
+				if (random.nextInt(4) == 0) raw.add((i + 1) * 10, random.nextInt(3) + random.nextFloat());
+			}
+
+			FrequencyPropagation propagated = propagate(graph, raw);
+
+			for (int round = 0; round < 5; ++round)
+			{
+				//add to some existing counts and count some new synsets,
+				//including a few offsets which aren't in the graph
+				OffsetCounts changed = new OffsetCounts();
+				for (int i = 0; i < 1 + size / 100; ++i)
+				{
+					long offset = (random.nextInt(size + 10) + 1) * 10 + (random.nextInt(20) == 0 ? 5 : 0);
+					float amount = random.nextFloat();
+
+					raw.add(offset, amount);
+					changed.add(offset, amount);
+				}
+
+				propagated.update(raw, changed);
+
+				assertEquals("hierarchy of " + size + " after update " + round,
+						toMap(walk(graph, raw)), toMap(propagated.getCounts(raw)));
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package englishcoffeedrinker.wordnet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the primitive offset to count map, which doesn't need WordNet.
+ */
+public class TestOffsetCounts
+{
+	private static Map<Long, Float> toMap(OffsetCounts counts)
+	{
+		Map<Long, Float> map = new HashMap<Long, Float>();
+		for (int slot = 0; slot < counts.slots(); ++slot)
+		{
+			if (counts.isUsed(slot)) map.put(counts.offsetAt(slot), counts.countAt(slot));
+		}
+		return map;
+	}
+
+	@Test
+	public void testAgainstHashMap() throws Exception {
+		Random random = new Random(42);
+
+		OffsetCounts counts = new OffsetCounts();
+		Map<Long, Float> expected = new HashMap<Long, Float>();
+
+		//enough offsets that the map has to grow several times
+		for (int i = 0; i < 20000; ++i)
+		{
+			long offset = random.nextInt(5000) * 100L;
+			float amount = random.nextFloat();
+
+			counts.add(offset, amount);
+			Float count = expected.get(offset);
+			expected.put(offset, count == null ? amount : count + amount);
+		}
+
+		counts.put(0, 3f);
+		expected.put(0L, 3f);
+
+		assertEquals(expected.size(), counts.size());
+		assertEquals(expected, toMap(counts));
+
+		for (Map.Entry<Long, Float> entry : expected.entrySet())
+		{
+			assertTrue(counts.containsKey(entry.getKey()));
+			assertEquals(entry.getValue(), counts.get(entry.getKey()), 0);
+		}
+
+		assertFalse(counts.containsKey(1));
+		assertEquals(0f, counts.get(1), 0);
+	}
+
+	@Test
+	public void testCopyAndAddAll() throws Exception {
+		OffsetCounts counts = new OffsetCounts();
+		counts.add(2084071, 1.5f);
+		counts.add(2121620, 0.5f);
+
+		//a copy is independent of the original
+		OffsetCounts copy = new OffsetCounts(counts);
+		copy.add(2084071, 1f);
+		assertEquals(1.5f, counts.get(2084071), 0);
+		assertEquals(2.5f, copy.get(2084071), 0);
+
+		OffsetCounts other = new OffsetCounts();
+		other.add(2121620, 0.25f);
+		other.add(7846, 2f);
+
+		counts.addAll(other);
+		assertEquals(3, counts.size());
+		assertEquals(0.75f, counts.get(2121620), 0);
+		assertEquals(2f, counts.get(7846), 0);
+	}
+
+	@Test
+	public void testAddRepeatedly() throws Exception {
+		Random random = new Random(42);
+
+		OffsetCounts once = new OffsetCounts();
+		OffsetCounts repeatedly = new OffsetCounts();
+
+		//adding a word's occurrences together must give exactly the count
+		//of adding them one at a time, including when the map grows
+		for (int i = 0; i < 2000; ++i)
+		{
+			long offset = random.nextInt(500) * 100L;
+			float amount = 1.0f / (1 + random.nextInt(30));
+			int times = random.nextInt(50);
+
+			for (int j = 0; j < times; ++j)
+			{
+				once.add(offset, amount);
+			}
+			repeatedly.add(offset, amount, times);
+		}
+
+		assertEquals(toMap(once), toMap(repeatedly));
+	}
+
+	@Test
+	public void testSortedOffsets() throws Exception {
+		Random random = new Random(42);
+
+		OffsetCounts counts = new OffsetCounts();
+		for (int i = 0; i < 5000; ++i)
+		{
+			counts.add(random.nextInt(100000000), 1f);
+		}
+		counts.put(0, 2f);
+
+		long[] sorted = counts.sortedOffsets();
+		assertEquals(counts.size(), sorted.length);
+		assertEquals(0, sorted[0]);
+
+		for (int i = 1; i < sorted.length; ++i)
+		{
+			assertTrue(sorted[i - 1] < sorted[i]);
+			assertTrue(counts.containsKey(sorted[i]));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeOffset() throws Exception {
+		new OffsetCounts().add(-1, 1f);
+	}
+}
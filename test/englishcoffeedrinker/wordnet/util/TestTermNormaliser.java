@@ -0,0 +1,64 @@
+package englishcoffeedrinker.wordnet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that the single pass term normaliser gives exactly the same words
+ * as the regular expressions it replaces.
+ */
+public class TestTermNormaliser
+{
+	private static void check(TermNormaliser normaliser, String term)
+	{
+		List<String> expected = new ArrayList<String>();
+		TermNormaliser.normaliseSlowly(term, expected);
+
+		List<String> actual = new ArrayList<String>();
+		normaliser.normalise(term, actual);
+
+		assertEquals("words of \"" + term + "\"", expected, actual);
+	}
+
+	@Test
+	public void testAwkwardTerms() throws Exception {
+		TermNormaliser normaliser = new TermNormaliser();
+
+		String[] terms = {"", " ", "...", "'", "Dog", "don't", "O'Reilly's", "coffee-house",
+				"a--b", "-dog-", "\tTab\t", "C3PO", "e.g.", "na\u00efve", "caf\u00e9 au lait", "\u212aelvin",
+				"\u0130stanbul", "\u00df", "x\u0000y", "a b  c", "rock'n'roll", "'quoted'"};
+
+		for (String term : terms) check(normaliser, term);
+
+		//a term longer than the initial buffer
+		StringBuilder longTerm = new StringBuilder();
+		for (int i = 0; i < 100; ++i) longTerm.append("Word-");
+		check(normaliser, longTerm.toString());
+	}
+
+	@Test
+	public void testCorpus() throws Exception {
+		TermNormaliser normaliser = new TermNormaliser();
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream("test/test-ic-corpus.txt"), "UTF-8"));
+		try
+		{
+			String line;
+			while ((line = in.readLine()) != null)
+			{
+				for (String term : line.split("\\s")) check(normaliser, term);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package uk.ac.sheffield.wordnet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import englishcoffeedrinker.wordnet.util.ICCounter;
+import gate.creole.ExecutionException;
+import gate.creole.ResourceInstantiationException;
+
+import org.junit.Test;
+
+/**
+ * Tests that duplicates of the IC counter sharing one set of counts only
+ * export them once per run, when the last of them finishes. No words are
+ * counted, so WordNet isn't needed.
+ */
+public class TestICCounterPR
+{
+	/**
+	 * A PR which records the counts it exports rather than writing them.
+	 */
+	private static final class RecordingPR extends ICCounterPR
+	{
+		private final List<ICCounter> exported;
+
+		RecordingPR(ICCounterPR.SharedCounter shared, List<ICCounter> exported)
+		{
+			this.exported = exported;
+			setShared(shared);
+		}
+
+		@Override
+		void export(ICCounter total) throws ExecutionException
+		{
+			exported.add(total);
+		}
+	}
+
+	private static ICCounterPR.SharedCounter createShared() throws Exception
+	{
+		//a template without a dictionary, which is fine as long as no
+		//words are counted
+		ICCounter template = new ICCounter(null, true, null)
+		{
+			@Override
+			protected void loadCompounds()
+			{
+			}
+		};
+
+		return new ICCounterPR.SharedCounter(template);
+	}
+
+	@Test
+	public void testExportOnce() throws Exception
+	{
+		List<ICCounter> exported = new ArrayList<ICCounter>();
+		ICCounterPR.SharedCounter shared = createShared();
+
+		ICCounterPR first = new RecordingPR(shared, exported);
+		ICCounterPR second = new RecordingPR(shared, exported);
+
+		first.controllerExecutionStarted(null);
+		second.controllerExecutionStarted(null);
+		assertEquals(2, shared.running);
+
+		first.controllerExecutionFinished(null);
+		assertEquals(0, exported.size());
+
+		second.controllerExecutionFinished(null);
+		assertEquals(1, exported.size());
+		assertEquals(0, shared.running);
+
+		//the next run starts from fresh counts and exports once more
+		ICCounter run = exported.get(0);
+		assertNotSame(run, shared.total);
+
+		second.controllerExecutionStarted(null);
+		first.controllerExecutionStarted(null);
+		second.controllerExecutionFinished(null);
+		first.controllerExecutionFinished(null);
+
+		assertEquals(2, exported.size());
+		assertNotSame(run, exported.get(1));
+	}
+
+	@Test
+	public void testAbortedRunIsNotExported() throws Exception
+	{
+		List<ICCounter> exported = new ArrayList<ICCounter>();
+		ICCounterPR.SharedCounter shared = createShared();
+
+		ICCounterPR first = new RecordingPR(shared, exported);
+		ICCounterPR second = new RecordingPR(shared, exported);
+
+		first.controllerExecutionStarted(null);
+		second.controllerExecutionStarted(null);
+		first.controllerExecutionAborted(null, new RuntimeException());
+		second.controllerExecutionFinished(null);
+
+		assertEquals(0, exported.size());
+		assertEquals(0, shared.running);
+
+		//an aborted run doesn't stop the next one being exported
+		first.controllerExecutionStarted(null);
+		second.controllerExecutionStarted(null);
+		first.controllerExecutionFinished(null);
+		second.controllerExecutionFinished(null);
+
+		assertEquals(1, exported.size());
+	}
+
+	@Test(expected = ResourceInstantiationException.class)
+	public void testMissingWordNetConfig() throws Exception
+	{
+		new ICCounterPR().init();
+	}
+}
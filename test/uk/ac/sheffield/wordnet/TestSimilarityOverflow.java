@@ -0,0 +1,115 @@
+package uk.ac.sheffield.wordnet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests that scores computed for words missing from a similarity table
+ * are written to the overflow file and loaded again on the next run.
+ */
+public class TestSimilarityOverflow
+{
+	private static final List<String> TARGETS = Arrays.asList("animal", "plant");
+
+	private static void append(File file, String text) throws Exception
+	{
+		FileOutputStream out = new FileOutputStream(file, true);
+		try
+		{
+			out.write(text.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	private static File createFile() throws Exception
+	{
+		File file = File.createTempFile("overflow", ".txt");
+		file.deleteOnExit();
+		file.delete();
+		return file;
+	}
+
+	@Test
+	public void testWriteBack() throws Exception
+	{
+		File file = createFile();
+
+		SimilarityOverflow overflow = SimilarityOverflow.acquire(file, TARGETS);
+		assertNull(overflow.get("dog"));
+
+		overflow.add("dog", new float[]{0.9f, 0.1f});
+		overflow.add("new york", new float[]{0.2f, 0.3f});
+		assertArrayEquals(new float[]{0.9f, 0.1f}, overflow.get("dog"), 0f);
+
+		//a second acquire of the same file shares the store
+		assertSame(overflow, SimilarityOverflow.acquire(file, TARGETS));
+		SimilarityOverflow.release(overflow);
+		SimilarityOverflow.release(overflow);
+
+		overflow = SimilarityOverflow.acquire(file, TARGETS);
+		try
+		{
+			assertArrayEquals(new float[]{0.9f, 0.1f}, overflow.get("dog"), 0f);
+
+			//words containing white space can't be written to the file
+			assertNull(overflow.get("new york"));
+		}
+		finally
+		{
+			SimilarityOverflow.release(overflow);
+		}
+	}
+
+	@Test
+	public void testPartialRow() throws Exception
+	{
+		File file = createFile();
+		append(file, "word pos animal plant\ndog ? 0.9 0.1\ncat ? 0.8");
+
+		SimilarityOverflow overflow = SimilarityOverflow.acquire(file, TARGETS);
+		try
+		{
+			assertNull(overflow.get("cat"));
+			overflow.add("cat", new float[]{0.8f, 0.2f});
+		}
+		finally
+		{
+			SimilarityOverflow.release(overflow);
+		}
+
+		SimilarityTable table = SimilarityTable.load(file.toURI().toURL(), "UTF-8");
+		assertEquals(2, table.size());
+		assertEquals(0.2f, table.getScore(table.getRow("cat"), 1), 0f);
+	}
+
+	@Test
+	public void testDifferentTargets() throws Exception
+	{
+		File file = createFile();
+		append(file, "word pos animal\ndog ? 0.9\n");
+
+		try
+		{
+			SimilarityOverflow.acquire(file, TARGETS);
+			fail("an overflow file for different targets should be rejected");
+		}
+		catch (IOException e)
+		{
+			//expected
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package uk.ac.sheffield.wordnet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests that the binary similarity table format holds exactly the same
+ * data as the text file it was converted from.
+ */
+public class TestSimilarityTable
+{
+	private static final String TEXT = "word pos animal food\n"
+			+ "dog ? 0.9 0.1\n"
+			+ "caf\u00e9 ? 0.05 0.75\n"
+			+ "apple ? 0.2 0.95\n"
+			+ "Zebra ? 0.8\n"
+			+ "dog ? 0.85 0.15\n";
+
+	private static File write(String text) throws Exception {
+		File file = File.createTempFile("similarity", ".txt");
+		file.deleteOnExit();
+
+		Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try
+		{
+			out.write(text);
+		}
+		finally
+		{
+			out.close();
+		}
+
+		return file;
+	}
+
+	private static void check(SimilarityTable table) {
+		assertEquals(Arrays.asList("animal", "food"), table.getTargets());
+		assertEquals(4, table.size());
+		assertEquals(1, table.getColumn("food"));
+		assertEquals(-1, table.getColumn("drink"));
+
+		//later rows replace earlier ones for the same word
+		assertEquals(0.85f, table.getScore(table.getRow("dog"), 0), 0);
+		assertEquals(0.15f, table.getScore(table.getRow("dog"), 1), 0);
+		assertEquals(0.75f, table.getScore(table.getRow("caf\u00e9"), 1), 0);
+		assertEquals(0.2f, table.getScore(table.getRow("apple"), 0), 0);
+
+		//missing scores are 0
+		assertEquals(0.8f, table.getScore(table.getRow("Zebra"), 0), 0);
+		assertEquals(0f, table.getScore(table.getRow("Zebra"), 1), 0);
+
+		assertEquals(-1, table.getRow("cat"));
+		assertEquals(-1, table.getRow("zebra"));
+		assertEquals(-1, table.getRow(""));
+
+		for (int row = 0; row < table.size(); ++row)
+		{
+			assertEquals(row, table.getRow(table.getWord(row)));
+		}
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws Exception {
+		SimilarityTable text = SimilarityTable.load(write(TEXT).toURI().toURL(), "UTF-8");
+		check(text);
+
+		File binaryFile = File.createTempFile("similarity", ".bin");
+		binaryFile.deleteOnExit();
+		text.write(binaryFile);
+
+		assertEquals(true, SimilarityTable.isBinary(binaryFile.toURI().toURL()));
+
+		check(SimilarityTable.load(binaryFile.toURI().toURL(), null));
+	}
+
+	@Test
+	public void testTargetRoundTrip() throws Exception {
+		//targets which writeUTF would encode differently to standard UTF-8
+		SimilarityTable text = SimilarityTable.load(write("word pos caf\u00e9 \ud83d\ude00x a\u0000b\ndog ? 0.1 0.2 0.3\n").toURI().toURL(), "UTF-8");
+
+		File binaryFile = File.createTempFile("similarity", ".bin");
+		binaryFile.deleteOnExit();
+		text.write(binaryFile);
+
+		SimilarityTable binary = SimilarityTable.load(binaryFile.toURI().toURL(), null);
+		assertEquals(Arrays.asList("caf\u00e9", "\ud83d\ude00x", "a\u0000b"), binary.getTargets());
+		assertEquals(2, binary.getColumn("a\u0000b"));
+		assertEquals(0.3f, binary.getScore(binary.getRow("dog"), 2), 0);
+	}
+
+	private static void checkProjection(SimilarityTable table) {
+		//targets are in the order asked for and unknown ones are ignored
+		assertEquals(Arrays.asList("food"), table.getTargets());
+		assertEquals(4, table.size());
+
+		assertEquals(0.15f, table.getScore(table.getRow("dog"), 0), 0);
+		assertEquals(0.95f, table.getScore(table.getRow("apple"), 0), 0);
+		assertEquals(0f, table.getScore(table.getRow("Zebra"), 0), 0);
+
+		//whole rows only hold the projected columns
+		assertArrayEquals(new float[]{0.15f}, table.getScores(table.getRow("dog")), 0);
+	}
+
+	@Test
+	public void testProjection() throws Exception {
+		URL text = write(TEXT).toURI().toURL();
+		checkProjection(SimilarityTable.load(text, "UTF-8", Arrays.asList("drink", "food")));
+
+		File binaryFile = File.createTempFile("similarity", ".bin");
+		binaryFile.deleteOnExit();
+		SimilarityTable.load(text, "UTF-8").write(binaryFile);
+
+		SimilarityTable binary = SimilarityTable.load(binaryFile.toURI().toURL(), null, Arrays.asList("drink", "food"));
+		checkProjection(binary);
+
+		//a projection is written out with just its own columns
+		File projectedFile = File.createTempFile("similarity", ".bin");
+		projectedFile.deleteOnExit();
+		binary.write(projectedFile);
+		checkProjection(SimilarityTable.load(projectedFile.toURI().toURL(), null));
+	}
+
+	@Test
+	public void testManyRows() throws Exception {
+		Random random = new Random(42);
+		String[] alphabet = {"a", "b", "\u00e9", "\u4e2d", "\ud83d\ude00"};
+
+		//later rows for the same word replace earlier ones
+		Map<String, Float> expected = new HashMap<String, Float>();
+		StringBuilder text = new StringBuilder("word pos animal\n");
+		for (int i = 0; i < 3000; ++i)
+		{
+			StringBuilder word = new StringBuilder();
+			for (int j = random.nextInt(4); j >= 0; --j)
+			{
+				word.append(alphabet[random.nextInt(alphabet.length)]);
+			}
+
+			float score = random.nextFloat();
+			expected.put(word.toString(), score);
+			text.append(word).append(" ? ").append(score).append('\n');
+		}
+
+		SimilarityTable table = SimilarityTable.load(write(text.toString()).toURI().toURL(), "UTF-8");
+		assertEquals(expected.size(), table.size());
+
+		for (Map.Entry<String, Float> entry : expected.entrySet())
+		{
+			int row = table.getRow(entry.getKey());
+			assertEquals(entry.getKey(), table.getWord(row));
+			assertEquals(entry.getValue(), table.getScore(row, 0), 0);
+
+			assertEquals(-1, table.getRow(entry.getKey() + "c"));
+		}
+
+		//the rows are in the unsigned order of their UTF-8 bytes
+		for (int row = 1; row < table.size(); ++row)
+		{
+			byte[] previous = table.getWord(row - 1).getBytes("UTF-8");
+			byte[] current = table.getWord(row).getBytes("UTF-8");
+
+			int cmp = 0;
+			for (int i = 0; cmp == 0 && i < previous.length && i < current.length; ++i)
+			{
+				cmp = (previous[i] & 0xFF) - (current[i] & 0xFF);
+			}
+			assertTrue(cmp < 0 || (cmp == 0 && previous.length < current.length));
+		}
+	}
+
+	@Test
+	public void testUnpairedSurrogate() throws Exception {
+		SimilarityTable table = SimilarityTable.load(write("word pos animal\na? ? 0.5\n").toURI().toURL(), "UTF-8");
+
+		//an unpaired surrogate is encoded as a question mark, as it is when
+		//a table is written
+		assertEquals(0, table.getRow("a?"));
+		assertEquals(0, table.getRow("a\ud800"));
+		assertEquals(-1, table.getRow("a\ud800b"));
+	}
+}
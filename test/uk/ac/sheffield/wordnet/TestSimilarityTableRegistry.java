@@ -0,0 +1,64 @@
+package uk.ac.sheffield.wordnet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+
+import org.junit.Test;
+
+/**
+ * Tests that loaded similarity tables are shared and only reloaded when
+ * the underlying file changes.
+ */
+public class TestSimilarityTableRegistry
+{
+	private static void write(File file, String text) throws Exception
+	{
+		FileOutputStream out = new FileOutputStream(file);
+		try
+		{
+			out.write(text.getBytes("UTF-8"));
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	@Test
+	public void testSharing() throws Exception
+	{
+		File file = File.createTempFile("similarity", ".txt");
+		file.deleteOnExit();
+		write(file, "word pos animal\ndog ? 0.9\n");
+		URL url = file.toURI().toURL();
+
+		SimilarityTable first = SimilarityTableRegistry.acquire(url, "UTF-8", null);
+		SimilarityTable second = SimilarityTableRegistry.acquire(url, "UTF-8", null);
+
+		//duplicates share a single table
+		assertSame(first, second);
+
+		SimilarityTableRegistry.release(first);
+		SimilarityTableRegistry.release(second);
+
+		//a re-init doesn't reload the unchanged file, as long as the
+		//table hasn't been reclaimed, which it won't as we still hold it
+		SimilarityTable again = SimilarityTableRegistry.acquire(url, "UTF-8", null);
+		assertSame(first, again);
+		SimilarityTableRegistry.release(again);
+
+		//but a changed file is reloaded
+		write(file, "word pos animal\ndog ? 0.5\ncat ? 0.7\n");
+		file.setLastModified(file.lastModified() + 2000);
+
+		SimilarityTable changed = SimilarityTableRegistry.acquire(url, "UTF-8", null);
+		assertNotSame(first, changed);
+		assertEquals(2, changed.size());
+		SimilarityTableRegistry.release(changed);
+	}
+}